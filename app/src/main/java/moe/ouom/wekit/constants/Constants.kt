@@ -29,6 +29,8 @@ class Constants private constructor() {
         const val PrekEnableLog: String = "setting_switch_value_prek_enable_log"
         const val PrekVerboseLog: String = "setting_switch_value_prek_verbose_log"
         const val PrekDatabaseVerboseLog: String = "setting_switch_value_prek_database_verbose_log"
+        const val PrekStackSampleRate: String = "setting_cfg_value_stack_sample_rate"
+        const val PrekStackSampleOverrides: String = "setting_cfg_value_stack_sample_overrides"
         const val PrekDisableVersionAdaptation: String = "setting_cfg_value_disable_version_adaptation"
     }
 }
@@ -7,11 +7,10 @@ import moe.ouom.wekit.core.model.BaseClickableFunctionHookItem
 import moe.ouom.wekit.hooks.core.annotation.HookItem
 import moe.ouom.wekit.hooks.sdk.protocol.WePkgManager
 import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgInterceptor
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgPacket
 import moe.ouom.wekit.ui.creator.dialog.BaseRikkaDialog
 import moe.ouom.wekit.util.WeProtoData
 import moe.ouom.wekit.util.log.WeLogger
-import org.json.JSONArray
-import org.json.JSONObject
 
 @HookItem(path = "聊天与消息/修改转账时的余额", desc = "点击配置")
 class HookQueryCashierPkg : BaseClickableFunctionHookItem(), IWePkgInterceptor {
@@ -22,105 +21,112 @@ class HookQueryCashierPkg : BaseClickableFunctionHookItem(), IWePkgInterceptor {
         // 默认值
         private const val DEFAULT_CFT = "¥999,999.00"
         private const val DEFAULT_LQT = "¥8,888,888.88"
+
+        private const val CGI_QUERY_CASHIER = 2882
     }
 
     override fun entry(classLoader: ClassLoader) {
-        WePkgManager.addInterceptor(this)
+        WePkgManager.addInterceptor(this, CGI_QUERY_CASHIER)
     }
 
-    override fun onResponse(uri: String, cgiId: Int, respBytes: ByteArray): ByteArray? {
-        if (cgiId != 2882) return null
+    override fun wantsRequest(uri: String, cgiId: Int) = false
 
-        WeLogger.i("HookQueryCashierPkg", "拦截到收银台数据包: $uri")
+    override fun onResponse(packet: WePkgPacket) {
+        WeLogger.i("HookQueryCashierPkg", "拦截到收银台数据包: ${packet.uri}")
 
         try {
-            val data = WeProtoData()
-            data.fromBytes(respBytes)
-            val json = data.toJSON()
-            processJsonObject(json)
-            data.applyViewJSON(json, true)
-
-            WeLogger.i("HookQueryCashierPkg", "篡改完成，返回新数据包")
-            return data.toPacketBytes()
+            // 直接在拦截链共享的解析结果上按字段号改写，不构建 JSON 树，由 WePkgManager 统一序列化
+            val config = WeConfig.getDefaultConfig()
+            val customCft = config.getStringPrek(KEY_CFT_BALANCE, DEFAULT_CFT) ?: DEFAULT_CFT
+            val customLqt = config.getStringPrek(KEY_LQT_BALANCE, DEFAULT_LQT) ?: DEFAULT_LQT
+            processMessage(packet.data(), customCft, customLqt)
+
+            WeLogger.i("HookQueryCashierPkg", "篡改完成")
         } catch (e: Exception) {
             WeLogger.e("HookQueryCashierPkg", e)
         }
-
-        return null
     }
 
-    private fun processJsonObject(obj: JSONObject) {
-        val keysList = mutableListOf<String>()
-        val keysIterator = obj.keys()
-        while (keysIterator.hasNext()) {
-            keysList.add(keysIterator.next())
-        }
-
-        val config = WeConfig.getDefaultConfig()
-        val customCft = config.getStringPrek(KEY_CFT_BALANCE, DEFAULT_CFT) ?: DEFAULT_CFT
-        val customLqt = config.getStringPrek(KEY_LQT_BALANCE, DEFAULT_LQT) ?: DEFAULT_LQT
-
-        for (key in keysList) {
-            val value = obj.opt(key) ?: continue
-
-            if (value is Number) {
-                val longVal = value.toLong()
-                if (longVal == 4289901234L || longVal == 2147483648L) {
-                    obj.put(key, 4278190080L)
+    /**
+     * 递归处理一层消息，返回本层或下层是否有改动
+     * 子消息是直接修改的，有改动时需要标记本层，序列化时才会重新编码
+     */
+    private fun processMessage(data: WeProtoData, customCft: String, customLqt: String): Boolean {
+        var changed = false
+
+        for (fieldNumber in data.fieldNumbers) {
+            val count = data.getFieldCount(fieldNumber)
+            for (i in 0 until count) {
+                val value = data.getFieldValue(fieldNumber, i) ?: continue
+
+                if (value is Number) {
+                    val longVal = value.toLong()
+                    if (longVal == 4289901234L || longVal == 2147483648L) {
+                        changed = data.setFieldValue(fieldNumber, i, 4278190080L) > 0 || changed
+                    }
                     continue
                 }
-            }
 
-            if (key == "5" && value is String) {
-                obj.put("7", 0)
+                if (fieldNumber == 5 && count == 1 && value is String) {
+                    changed = data.setFieldValue(7, 0L) > 0 || changed
+                    changed = handleField3(data) || changed
 
-                if (obj.has("3")) {
-                    handleField3(obj)
+                    when (value) {
+                        "CFT" -> changed = updateBalanceText(data, "零钱(剩余$customCft)") || changed
+                        "LQT" -> changed = updateBalanceText(data, "零钱通(剩余$customLqt)") || changed
+                    }
                 }
 
-                when (value) {
-                    "CFT" -> updateBalanceText(obj, "零钱(剩余$customCft)")
-                    "LQT" -> updateBalanceText(obj, "零钱通(剩余$customLqt)")
-                }
-            }
-
-            if (value is JSONObject) {
-                processJsonObject(value)
-            } else if (value is JSONArray) {
-                for (i in 0 until value.length()) {
-                    val item = value.optJSONObject(i)
-                    if (item != null) processJsonObject(item)
+                if (value is WeProtoData && processMessage(value, customCft, customLqt)) {
+                    changed = true
                 }
             }
         }
+
+        if (changed) data.markModified()
+        return changed
     }
 
-    private fun handleField3(parent: JSONObject) {
-        val f3 = parent.get("3")
-        if (f3 is JSONObject) {
-            val text = f3.optJSONObject("1")?.optString("3") ?: ""
-            if (text.contains("不足")) parent.remove("3")
-        } else if (f3 is JSONArray) {
-            for (i in f3.length() - 1 downTo 0) {
-                val item = f3.optJSONObject(i)
-                val text = item?.optJSONObject("1")?.optString("3") ?: ""
-                if (text.contains("不足")) f3.remove(i)
-            }
+    private fun handleField3(parent: WeProtoData): Boolean {
+        var changed = false
+        for (i in parent.getFieldCount(3) - 1 downTo 0) {
+            val item = parent.getFieldValue(3, i) as? WeProtoData ?: continue
+            val text = single(item, 1)?.getFieldValue(3, 0) as? String ?: ""
+            if (text.contains("不足")) changed = parent.removeField(3, i) || changed
         }
+        return changed
     }
 
-    private fun updateBalanceText(item: JSONObject, newText: String) {
+    private fun updateBalanceText(item: WeProtoData, newText: String): Boolean {
         try {
-            val field2 = item.optJSONObject("2") ?: return
-            val subField1 = field2.optJSONObject("1") ?: return
-            subField1.put("3", newText)
-            val field11 = item.optJSONObject("11")
-            field11?.optJSONObject("1")?.put("3", newText.replace(Regex("\\(.*?\\)"), ""))
+            val field2 = single(item, 2) ?: return false
+            val subField1 = single(field2, 1) ?: return false
+            var changed = false
+            if (subField1.setFieldValue(3, newText) > 0) {
+                field2.markModified()
+                changed = true
+            }
+            val field11 = single(item, 11)
+            val field11Sub = field11?.let { single(it, 1) }
+            if (field11 != null && field11Sub != null &&
+                field11Sub.setFieldValue(3, newText.replace(Regex("\\(.*?\\)"), "")) > 0
+            ) {
+                field11.markModified()
+                changed = true
+            }
+            return changed
         } catch (e: Exception) {
             WeLogger.e(e)
+            return false
         }
     }
 
+    /**
+     * 只出现一次的子消息字段，重复字段或非消息字段返回 null
+     */
+    private fun single(data: WeProtoData, fieldNumber: Int): WeProtoData? =
+        if (data.getFieldCount(fieldNumber) == 1) data.getFieldValue(fieldNumber, 0) as? WeProtoData else null
+
     private inner class ConfigDialog(context: Context) : BaseRikkaDialog(context, "收银台余额配置") {
         override fun initPreferences() {
             addCategory("金额设置")
@@ -0,0 +1,47 @@
+package moe.ouom.wekit.hooks.item.dev
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import moe.ouom.wekit.ui.CommonContextWrapper
+import moe.ouom.wekit.util.common.Toasts.showToast
+import moe.ouom.wekit.util.io.SafUtils
+import moe.ouom.wekit.util.log.WeLogger
+import java.io.OutputStream
+
+/**
+ * 开发者选项中二进制文件的导出
+ * 通过 SAF 让用户选择保存位置，writer 在后台线程写入，结果以 Toast 提示
+ */
+internal object BinaryExport {
+
+    fun save(context: Context, defaultName: String, writer: (OutputStream) -> Unit) {
+        val mainHandler = Handler(Looper.getMainLooper())
+        mainHandler.post {
+            try {
+                val wrappedContext = CommonContextWrapper.createAppCompatContext(context)
+                SafUtils.requestSaveFile(wrappedContext)
+                    .setDefaultFileName(defaultName)
+                    .setMimeType("application/octet-stream")
+                    .onResult { uri ->
+                        Thread {
+                            try {
+                                context.contentResolver.openOutputStream(uri)?.use(writer)
+                                mainHandler.post { showToast(context, "导出成功") }
+                            } catch (e: Throwable) {
+                                WeLogger.e("[BinaryExport] Failed to write $defaultName", e)
+                                mainHandler.post { showToast(context, "导出失败: ${e.message}") }
+                            }
+                        }.start()
+                    }
+                    .onCancel {
+                        showToast(context, "取消导出")
+                    }
+                    .commit()
+            } catch (e: Throwable) {
+                WeLogger.e("[BinaryExport] Failed to start SAF export", e)
+                showToast(context, "启动导出失败: ${e.message}")
+            }
+        }
+    }
+}
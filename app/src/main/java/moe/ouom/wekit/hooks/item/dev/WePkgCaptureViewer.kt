@@ -0,0 +1,58 @@
+package moe.ouom.wekit.hooks.item.dev
+
+import android.content.Context
+import com.afollestad.materialdialogs.MaterialDialog
+import moe.ouom.wekit.core.model.BaseClickableFunctionHookItem
+import moe.ouom.wekit.hooks.core.annotation.HookItem
+import moe.ouom.wekit.hooks.sdk.protocol.WePkgCapture
+import moe.ouom.wekit.util.common.Toasts.showToast
+import moe.ouom.wekit.util.common.Utils.formatFileSize
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * 协议层抓包
+ * 开启后在内存中保留最近约 8MB 的原始数据包，点击导出为二进制抓包文件
+ */
+@HookItem(path = "开发者选项/协议抓包", desc = "在内存中保留最近的原始数据包，可导出后离线解析")
+class WePkgCaptureViewer : BaseClickableFunctionHookItem() {
+
+    override fun entry(classLoader: ClassLoader) {
+        WePkgCapture.start()
+    }
+
+    override fun unload(classLoader: ClassLoader) {
+        WePkgCapture.stop()
+        super.unload(classLoader)
+    }
+
+    override fun onClick(context: Context?) {
+        context ?: return
+        if (!WePkgCapture.enabled) {
+            showToast(context, "请先开启协议抓包")
+            return
+        }
+        MaterialDialog(context).show {
+            title(text = "协议抓包")
+            message(
+                text = "已缓存 ${formatFileSize(WePkgCapture.size().toLong())}，" +
+                        "容量 ${formatFileSize(WePkgCapture.DEFAULT_CAPACITY.toLong())}，" +
+                        "超长丢弃 ${WePkgCapture.droppedCount()} 条"
+            )
+            positiveButton(text = "导出") {
+                exportCapture(context)
+            }
+            negativeButton(text = "关闭")
+            neutralButton(text = "清空") {
+                WePkgCapture.clear()
+                showToast(context, "已清空")
+            }
+        }
+    }
+
+    private fun exportCapture(context: Context) {
+        val name = SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ROOT).format(Date())
+        BinaryExport.save(context, "wekit_capture_$name.wkpc") { WePkgCapture.export(it) }
+    }
+}
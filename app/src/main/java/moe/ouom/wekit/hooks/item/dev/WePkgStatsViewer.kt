@@ -0,0 +1,54 @@
+package moe.ouom.wekit.hooks.item.dev
+
+import android.content.Context
+import com.afollestad.materialdialogs.MaterialDialog
+import moe.ouom.wekit.core.model.BaseClickableFunctionHookItem
+import moe.ouom.wekit.hooks.core.annotation.HookItem
+import moe.ouom.wekit.hooks.sdk.protocol.WePkgStats
+import moe.ouom.wekit.util.common.Toasts.showToast
+import java.text.SimpleDateFormat
+import java.util.Date
+import java.util.Locale
+
+/**
+ * 网络统计
+ * 开启后按 CGI 记录网络耗时、请求/回包大小与拦截器耗时，点击查看摘要或导出二进制快照
+ */
+@HookItem(path = "开发者选项/网络统计", desc = "统计各 CGI 的网络耗时、包大小与拦截器耗时")
+class WePkgStatsViewer : BaseClickableFunctionHookItem() {
+
+    override fun entry(classLoader: ClassLoader) {
+        WePkgStats.enabled = true
+    }
+
+    override fun unload(classLoader: ClassLoader) {
+        WePkgStats.enabled = false
+        super.unload(classLoader)
+    }
+
+    override fun onClick(context: Context?) {
+        context ?: return
+        if (!WePkgStats.enabled) {
+            showToast(context, "请先开启网络统计")
+            return
+        }
+        val since = SimpleDateFormat("MM-dd HH:mm:ss", Locale.getDefault()).format(Date(WePkgStats.since))
+        MaterialDialog(context).show {
+            title(text = "网络统计 (自 $since)")
+            message(text = WePkgStats.format())
+            positiveButton(text = "导出") {
+                exportDump(context)
+            }
+            negativeButton(text = "关闭")
+            neutralButton(text = "清空") {
+                WePkgStats.reset()
+                showToast(context, "已清空")
+            }
+        }
+    }
+
+    private fun exportDump(context: Context) {
+        val name = SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ROOT).format(Date())
+        BinaryExport.save(context, "wekit_pkgstats_$name.bin") { WePkgStats.dump(it) }
+    }
+}
@@ -15,13 +15,14 @@ import moe.ouom.wekit.core.model.BaseClickableFunctionHookItem
 import moe.ouom.wekit.hooks.core.annotation.HookItem
 import moe.ouom.wekit.hooks.sdk.protocol.WePkgManager
 import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgInterceptor
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgPacket
 import moe.ouom.wekit.ui.CommonContextWrapper
 import moe.ouom.wekit.ui.creator.dialog.BaseSettingsDialog
-import moe.ouom.wekit.util.WeProtoData
 import moe.ouom.wekit.util.common.Toasts.showToast
 import moe.ouom.wekit.util.log.WeLogger
 import moe.ouom.wekit.util.script.ScriptEvalManager
 import moe.ouom.wekit.util.script.ScriptFileManager
+import org.json.JSONArray
 import org.json.JSONObject
 import java.text.SimpleDateFormat
 import java.util.*
@@ -40,41 +41,28 @@ class ScriptConfigHookItem : BaseClickableFunctionHookItem(), IWePkgInterceptor
         WePkgManager.addInterceptor(this)
     }
 
-    override fun onRequest(uri: String, cgiId: Int, reqBytes: ByteArray): ByteArray? {
+    // 没有启用脚本声明关心该数据包时直接跳过，不做解析
+    override fun wantsRequest(uri: String, cgiId: Int) =
+        ScriptEvalManager.getInstance().wantsRequest(uri, cgiId)
+
+    override fun wantsResponse(uri: String, cgiId: Int) =
+        ScriptEvalManager.getInstance().wantsResponse(uri, cgiId)
+
+    override fun onRequest(packet: WePkgPacket) {
         try {
-            // 解析 Protobuf 数据
-            val data = WeProtoData()
-            data.fromBytes(reqBytes)
-            // 转换为 JSON 进行处理
-            val json = data.toJSON()
-            // 应用脚本修改
-            val modifiedJson = ScriptEvalManager.getInstance().executeOnRequest(uri, cgiId, json)
-            // 应用修改并转回字节数组
-            data.applyViewJSON(modifiedJson, true)
-            return data.toPacketBytes()
+            // 脚本直接读写共享的解析结果，由拦截链在确有修改时统一序列化
+            ScriptEvalManager.getInstance().executeOnRequest(packet.uri, packet.cgiId, packet::data)
         } catch (e: Exception) {
             WeLogger.e("ScriptConfig", e)
         }
-
-        return null
     }
 
-    override fun onResponse(uri: String, cgiId: Int, respBytes: ByteArray): ByteArray? {
+    override fun onResponse(packet: WePkgPacket) {
         try {
-            // 解析 Protobuf 数据
-            val data = WeProtoData()
-            data.fromBytes(respBytes)
-            // 转换为 JSON 进行处理
-            val json = data.toJSON()
-            // 应用脚本修改
-            val modifiedJson = ScriptEvalManager.getInstance().executeOnResponse(uri, cgiId, json)
-            // 应用修改并转回字节数组
-            data.applyViewJSON(modifiedJson, true)
-            return data.toPacketBytes()
+            ScriptEvalManager.getInstance().executeOnResponse(packet.uri, packet.cgiId, packet::data)
         } catch (e: Exception) {
             WeLogger.e("ScriptConfig", e)
         }
-        return null
     }
 
     override fun unload(classLoader: ClassLoader) {
@@ -331,6 +319,8 @@ class ScriptConfigHookItem : BaseClickableFunctionHookItem(), IWePkgInterceptor
                 put("id", script.id)
                 put("description", script.description)
                 put("content", contentEncoded)
+                put("cgiIds", JSONArray(script.cgiIds))
+                put("uriFilter", script.uriFilter)
             }
 
             copyToClipboard("脚本JSON", jsonObject.toString(2))
@@ -637,6 +627,9 @@ class ScriptConfigHookItem : BaseClickableFunctionHookItem(), IWePkgInterceptor
                             val newId = jsonObject.optString("id", UUID.randomUUID().toString())
                             val newDescription = jsonObject.optString("description", "")
                             val contentEncoded = jsonObject.optString("content", "")
+                            val newCgiIds = jsonObject.optJSONArray("cgiIds")
+                                ?.let { arr -> List(arr.length()) { arr.optInt(it) } } ?: emptyList()
+                            val newUriFilter = jsonObject.optString("uriFilter", "")
 
                             // 解码内容
                             val contentBytes = Base64.decode(contentEncoded, Base64.NO_WRAP)
@@ -649,6 +642,8 @@ class ScriptConfigHookItem : BaseClickableFunctionHookItem(), IWePkgInterceptor
                                 existingScript.name = newName
                                 existingScript.content = newContent
                                 existingScript.description = newDescription
+                                existingScript.cgiIds = newCgiIds
+                                existingScript.uriFilter = newUriFilter
                                 existingScript.modifiedTime = System.currentTimeMillis()
 
                                 scriptManager.saveScript(existingScript)
@@ -664,6 +659,8 @@ class ScriptConfigHookItem : BaseClickableFunctionHookItem(), IWePkgInterceptor
                                 name = newName,
                                 content = newContent,
                                 description = newDescription,
+                                cgiIds = newCgiIds,
+                                uriFilter = newUriFilter,
                                 order = scripts.size
                             )
 
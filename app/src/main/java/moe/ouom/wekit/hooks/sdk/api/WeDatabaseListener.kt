@@ -9,6 +9,7 @@ import moe.ouom.wekit.constants.Constants
 import moe.ouom.wekit.core.model.ApiHookItem
 import moe.ouom.wekit.hooks.core.annotation.HookItem
 import moe.ouom.wekit.util.Initiator.loadClass
+import moe.ouom.wekit.util.log.StackSampler
 import moe.ouom.wekit.util.log.WeLogger
 import java.util.concurrent.CopyOnWriteArrayList
 
@@ -74,8 +75,13 @@ class WeDatabaseListener : ApiHookItem() {
                                     "arg[$index](${arg?.javaClass?.simpleName ?: "null"})=$arg"
                                 }.joinToString(", ")
                                 val result = param.result
+                                val stack = if (StackSampler.shouldSample(table)) {
+                                    StackSampler.id(Thread.currentThread().stackTrace)
+                                } else {
+                                    "-"
+                                }
 
-                                WeLogger.logChunkedD("WeDatabaseApi","[Insert] table=$table, result=$result, args=[$argsInfo], stack=${WeLogger.getStackTraceString()}")
+                                WeLogger.logChunkedD("WeDatabaseApi","[Insert] table=$table, result=$result, args=[$argsInfo], stack=$stack")
                             }
                         }
                         listeners.forEach { it.onInsert(table, values) }
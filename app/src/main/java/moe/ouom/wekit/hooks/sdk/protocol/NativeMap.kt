@@ -1,5 +1,8 @@
 package moe.ouom.wekit.hooks.sdk.protocol
 
+import moe.ouom.wekit.hooks.sdk.protocol.intf.ISigner
+import moe.ouom.wekit.hooks.sdk.protocol.model.CgiCachePolicy
+
 object NativeMap {
     val NATIVE_CONFIG = mutableMapOf(
         522 to Triple("mx4.as5", 237, 1000000237),   // /cgi-bin/micromsg-bin/newsendmsg
@@ -201,4 +204,23 @@ object NativeMap {
         594 to Triple("mx4.sl5", 0, 0),              // /cgi-bin/micromsg-bin/revokemsg
         681 to Triple("mx4.jv4", 0, 0),               // /cgi-bin/micromsg-bin/oplog
     )
-}
\ No newline at end of file
+
+    /**
+     * 通用发包使用的签名器，WePkgHelper 在 entry 时按 cgiIds 建立索引
+     * 依赖 dex 查找结果的签名器由 WePkgHelper 自行注册，运行时可通过 WePkgHelper.registerSigner 追加
+     */
+    val SIGNERS = mutableListOf<ISigner>(
+        NewSendMsgSigner(),
+        EmojiSigner(),
+        AppMsgSigner(),
+    )
+
+    /**
+     * 只读 CGI 的回包缓存策略，通用发包时由 WePkgCache 使用；带签名器的 cgiId 不会走缓存
+     */
+    val CACHE_POLICY = mutableMapOf(
+        379 to CgiCachePolicy(ttlMs = 5 * 60_000L),  // /cgi-bin/micromsg-bin/getcdndns
+        526 to CgiCachePolicy(ttlMs = 30_000L),      // /cgi-bin/micromsg-bin/getonlineinfo
+        106 to CgiCachePolicy(ttlMs = 60_000L),      // /cgi-bin/micromsg-bin/searchcontact
+    )
+}
@@ -0,0 +1,65 @@
+package moe.ouom.wekit.hooks.sdk.protocol
+
+import moe.ouom.wekit.util.WeProtoSchema
+import moe.ouom.wekit.util.log.WeLogger
+import org.json.JSONObject
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 按 cgiId 登记的 Protobuf 字段类型表
+ * 已登记的 CGI 由 WeProtoData 按类型一次性解码，未登记的 CGI 仍使用启发式判断
+ * 内置描述文件位于 resources/wekit/proto_schema.json，格式见 [WeProtoSchema]
+ */
+object NativeSchema {
+    private const val TAG = "NativeSchema"
+    private const val BUNDLED_SCHEMA = "wekit/proto_schema.json"
+
+    private val requestSchemas = ConcurrentHashMap<Int, WeProtoSchema>()
+    private val responseSchemas = ConcurrentHashMap<Int, WeProtoSchema>()
+
+    init {
+        loadBundled()
+    }
+
+    fun registerRequest(cgiId: Int, schema: WeProtoSchema) {
+        requestSchemas[cgiId] = schema
+    }
+
+    fun registerResponse(cgiId: Int, schema: WeProtoSchema) {
+        responseSchemas[cgiId] = schema
+    }
+
+    fun unregister(cgiId: Int) {
+        requestSchemas.remove(cgiId)
+        responseSchemas.remove(cgiId)
+    }
+
+    fun request(cgiId: Int): WeProtoSchema? = requestSchemas[cgiId]
+
+    fun response(cgiId: Int): WeProtoSchema? = responseSchemas[cgiId]
+
+    /**
+     * 从描述 JSON 批量登记，格式：{ "cgiId": { "request": {...}, "response": {...} } }
+     */
+    fun load(json: JSONObject) {
+        val keys = json.keys()
+        while (keys.hasNext()) {
+            val key = keys.next()
+            val cgiId = key.toIntOrNull() ?: continue
+            val entry = json.optJSONObject(key) ?: continue
+            entry.optJSONObject("request")?.let { registerRequest(cgiId, WeProtoSchema.fromJSON(it)) }
+            entry.optJSONObject("response")?.let { registerResponse(cgiId, WeProtoSchema.fromJSON(it)) }
+        }
+    }
+
+    private fun loadBundled() {
+        try {
+            val stream = NativeSchema::class.java.classLoader?.getResourceAsStream(BUNDLED_SCHEMA) ?: return
+            val text = stream.bufferedReader().use { it.readText() }
+            load(JSONObject(text))
+            WeLogger.i(TAG, "已加载内置字段类型表: 请求 ${requestSchemas.size} 个, 响应 ${responseSchemas.size} 个")
+        } catch (e: Throwable) {
+            WeLogger.e(TAG, "加载内置字段类型表失败", e)
+        }
+    }
+}
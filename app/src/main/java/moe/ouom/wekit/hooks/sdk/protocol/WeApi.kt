@@ -89,17 +89,22 @@ object MsgIdProvider {
     private const val MMKV_FILE_ID = "db_max_id_record"
     private const val KEY_PREFIX = "msg."
 
+    // 反射目标只解析一次，解析失败时下次访问会重试，本次走 previewNextId 的兜底
+    private val mmkvClass by lazy { Class.forName("com.tencent.mmkv.MMKV") }
+    private val mmkvInstance by lazy {
+        mmkvClass.getDeclaredMethod("mmkvWithID", String::class.java, Int::class.javaPrimitiveType)
+            .invoke(null, MMKV_FILE_ID, 2)
+    }
+    private val decodeLongMethod by lazy {
+        mmkvClass.getDeclaredMethod("decodeLong", String::class.java, Long::class.javaPrimitiveType)
+    }
+
     /**
      * 获取下一个可用的 MsgId
      * @param tableName 表名，主表为 "message"，小程序为 "appbrandmessage" 等
      */
     fun previewNextId(tableName: String): Long {
         return try {
-            val mmkvClass = Class.forName("com.tencent.mmkv.MMKV")
-            val mmkvWithIDMethod = mmkvClass.getDeclaredMethod("mmkvWithID", String::class.java, Int::class.javaPrimitiveType)
-            val mmkvInstance = mmkvWithIDMethod.invoke(null, MMKV_FILE_ID, 2)
-            val decodeLongMethod = mmkvClass.getDeclaredMethod("decodeLong", String::class.java, Long::class.javaPrimitiveType)
-
             val currentId = decodeLongMethod.invoke(mmkvInstance, "$KEY_PREFIX$tableName", 0L) as Long
 
             if (currentId == 0L) {
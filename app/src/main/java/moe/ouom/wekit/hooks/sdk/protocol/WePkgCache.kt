@@ -0,0 +1,126 @@
+package moe.ouom.wekit.hooks.sdk.protocol
+
+import moe.ouom.wekit.hooks.sdk.protocol.model.CgiCachePolicy
+import moe.ouom.wekit.hooks.sdk.protocol.model.CgiRequest
+import moe.ouom.wekit.hooks.sdk.protocol.model.CgiResult
+import moe.ouom.wekit.util.log.WeLogger
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 通用发包的回包缓存与在途合并，只对 NativeMap.CACHE_POLICY 中登记的 cgiId 生效
+ * 以 cgiId 与编码后的请求字节为键，同一 JSON 的不同写法（空白、数字格式）编码结果相同，会命中同一条目
+ */
+object WePkgCache {
+    private const val TAG = "WePkgCache"
+    private const val MAX_ENTRIES = 256
+    private const val MAX_BYTES = 4 * 1024 * 1024
+
+    private class Key(val cgiId: Int, val body: ByteArray) {
+        private val hash = 31 * cgiId + body.contentHashCode()
+        override fun hashCode() = hash
+        override fun equals(other: Any?) =
+            other is Key && other.hash == hash && other.cgiId == cgiId && other.body.contentEquals(body)
+    }
+
+    private class Entry(val bytes: ByteArray?, val expiresAt: Long)
+
+    // accessOrder 为 true 的 LinkedHashMap 即 LRU，最久未访问的在最前
+    private val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+    private var totalBytes = 0
+    private val inFlight = ConcurrentHashMap<Key, CompletableFuture<CgiResult>>()
+
+    fun policyOf(cgiId: Int): CgiCachePolicy? = NativeMap.CACHE_POLICY[cgiId]
+
+    /**
+     * 命中缓存时直接返回；否则与在途的相同请求合并，都没有时调用 load 发起请求
+     * 不合并在途请求时直接返回 load 的 future，cancel 会照常取消网络请求；
+     * 合并后的调用方各自拿到一个派生的 future，单个调用方 cancel 不会影响其他人，也不会中断网络请求
+     */
+    fun getOrLoad(
+        request: CgiRequest,
+        body: ByteArray,
+        policy: CgiCachePolicy,
+        load: () -> CompletableFuture<CgiResult>
+    ): CompletableFuture<CgiResult> {
+        val key = Key(request.cgiId, body)
+        lookup(key)?.let { cached ->
+            return CompletableFuture.completedFuture(CgiResult(request, cached.bytes))
+        }
+        if (!policy.dedupInFlight) {
+            return load().also { loading ->
+                loading.whenComplete { result, _ -> if (result?.isSuccess == true) store(key, result.bytes, policy) }
+            }
+        }
+
+        var created: CompletableFuture<CgiResult>? = null
+        val shared = inFlight.computeIfAbsent(key) { CompletableFuture<CgiResult>().also { created = it } }
+        val source = created
+        if (source != null) {
+            val loading = try {
+                load()
+            } catch (e: Throwable) {
+                // 不移除在途条目的话，之后相同请求的调用方会一直等待
+                inFlight.remove(key, source)
+                source.completeExceptionally(e)
+                null
+            }
+            loading?.whenComplete { result, error ->
+                if (result?.isSuccess == true) store(key, result.bytes, policy)
+                inFlight.remove(key, source)
+                if (error != null) source.completeExceptionally(error) else source.complete(result)
+            }
+        } else {
+            WeLogger.d(TAG, "[${request.cgiId}] 合并到在途请求")
+        }
+
+        return shared.thenApply { result ->
+            if (result.request === request) result
+            else CgiResult(request, result.bytes, result.errType, result.errCode, result.errMsg)
+        }
+    }
+
+    @Synchronized
+    private fun lookup(key: Key): Entry? {
+        val entry = entries[key] ?: return null
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.remove(key)
+            totalBytes -= key.body.size + (entry.bytes?.size ?: 0)
+            return null
+        }
+        return entry
+    }
+
+    @Synchronized
+    private fun store(key: Key, bytes: ByteArray?, policy: CgiCachePolicy) {
+        val size = key.body.size + (bytes?.size ?: 0)
+        if (policy.ttlMs <= 0 || size > MAX_BYTES) return
+        entries.put(key, Entry(bytes, System.currentTimeMillis() + policy.ttlMs))?.let { old ->
+            totalBytes -= key.body.size + (old.bytes?.size ?: 0)
+        }
+        totalBytes += size
+        val it = entries.entries.iterator()
+        while ((entries.size > MAX_ENTRIES || totalBytes > MAX_BYTES) && it.hasNext()) {
+            val eldest = it.next()
+            totalBytes -= eldest.key.body.size + (eldest.value.bytes?.size ?: 0)
+            it.remove()
+        }
+    }
+
+    @Synchronized
+    fun invalidate(cgiId: Int) {
+        val it = entries.entries.iterator()
+        while (it.hasNext()) {
+            val e = it.next()
+            if (e.key.cgiId != cgiId) continue
+            totalBytes -= e.key.body.size + (e.value.bytes?.size ?: 0)
+            it.remove()
+        }
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        totalBytes = 0
+    }
+}
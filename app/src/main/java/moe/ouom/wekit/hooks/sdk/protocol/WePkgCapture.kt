@@ -0,0 +1,57 @@
+package moe.ouom.wekit.hooks.sdk.protocol
+
+import moe.ouom.wekit.util.common.PacketRing
+import java.io.OutputStream
+
+/**
+ * 协议层抓包：把经过拦截器处理后的原始数据包写入定长的堆外环形缓冲区
+ * 导出文件格式见 [PacketRing]，可在桌面 JVM 上读回后用 WeProtoData 解析
+ */
+object WePkgCapture {
+
+    const val DEFAULT_CAPACITY = 8 shl 20
+
+    @Volatile
+    private var ring: PacketRing? = null
+
+    val enabled: Boolean
+        get() = ring != null
+
+    @Synchronized
+    fun start(capacity: Int = DEFAULT_CAPACITY) {
+        if (ring == null) ring = PacketRing(capacity)
+    }
+
+    /**
+     * 停止抓包并释放缓冲区，已抓取的数据一并丢弃
+     */
+    @Synchronized
+    fun stop() {
+        ring = null
+    }
+
+    internal fun capture(isRequest: Boolean, uri: String, cgiId: Int, bytes: ByteArray) {
+        ring?.append(
+            System.currentTimeMillis(), cgiId,
+            if (isRequest) PacketRing.DIR_REQUEST else PacketRing.DIR_RESPONSE,
+            uri, bytes
+        )
+    }
+
+    fun size(): Int = ring?.size() ?: 0
+
+    fun droppedCount(): Long = ring?.droppedCount() ?: 0
+
+    fun clear() {
+        ring?.clear()
+    }
+
+    /**
+     * 导出当前缓冲区内的全部记录，未在抓包时返回 false
+     */
+    fun export(out: OutputStream): Boolean {
+        val r = ring ?: return false
+        r.export(out)
+        return true
+    }
+}
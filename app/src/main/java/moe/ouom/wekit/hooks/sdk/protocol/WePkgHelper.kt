@@ -3,14 +3,19 @@ package moe.ouom.wekit.hooks.sdk.protocol
 import android.annotation.SuppressLint
 import android.os.Handler
 import android.os.Looper
+import android.util.SparseArray
 import de.robv.android.xposed.XposedHelpers
+import kotlinx.coroutines.future.await
 import moe.ouom.wekit.core.dsl.dexClass
 import moe.ouom.wekit.core.dsl.dexMethod
 import moe.ouom.wekit.core.model.ApiHookItem
 import moe.ouom.wekit.dexkit.intf.IDexFind
 import moe.ouom.wekit.hooks.core.annotation.HookItem
+import moe.ouom.wekit.hooks.sdk.protocol.intf.ISigner
 import moe.ouom.wekit.hooks.sdk.protocol.intf.WeReqCallback
-import moe.ouom.wekit.util.WeProtoData
+import moe.ouom.wekit.hooks.sdk.protocol.model.CgiRequest
+import moe.ouom.wekit.hooks.sdk.protocol.model.CgiResult
+import moe.ouom.wekit.util.WeProtoJsonCodec
 import moe.ouom.wekit.util.Initiator.loadClass
 import moe.ouom.wekit.util.ProtoJsonBuilder
 import moe.ouom.wekit.util.log.WeLogger
@@ -22,6 +27,17 @@ import java.lang.reflect.InvocationHandler
 import java.lang.reflect.Method
 import java.lang.reflect.Modifier
 import java.lang.reflect.Proxy
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
 @HookItem(path = "protocol/通用发包服务")
 class WePkgHelper : ApiHookItem(), IDexFind {
@@ -53,17 +69,89 @@ class WePkgHelper : ApiHookItem(), IDexFind {
     private var classLoader: ClassLoader? = null
     private val cgiReqClassMap = mutableMapOf<Int, Class<*>>()
 
-    private val signers = listOf(
-        NewSendMsgSigner(),
-        EmojiSigner(),
-        AppMsgSigner(),
-        SendPatSigner { dexClsNetScenePat.clazz }
-    )
+    // cgiId -> 签名器，注册时整体替换，发包时只读
+    @Volatile
+    private var signerTable = SparseArray<ISigner>()
+
+    // 通用发包的分发方法，首次发包时解析一次
+    private val dispatchMethod: Method by lazy {
+        XposedHelpers.findMethodExact(
+            dexClsNetDispatcher.clazz,
+            "d",
+            dexClsReqResp.clazz,
+            dexClsCallbackIface.clazz,
+            Boolean::class.javaPrimitiveType
+        )
+    }
 
     companion object {
         const val TAG = "PkgHelper"
         @Volatile
         var INSTANCE: WePkgHelper? = null
+
+        private const val SEND_THREADS = 4
+        private const val DECODE_THREADS = 2
+        const val DEFAULT_BATCH_CONCURRENCY = 8
+        const val DEFAULT_TIMEOUT_MS = 60_000L
+
+        // 超时与取消通过 onFail 的 errType 区分
+        const val ERR_TIMEOUT = -2
+        const val ERR_CANCELLED = -3
+
+        private val mainHandler by lazy { Handler(Looper.getMainLooper()) }
+        private val mainExecutor = Executor { mainHandler.post(it) }
+
+        private fun newPool(name: String, threads: Int): ExecutorService {
+            val counter = AtomicInteger()
+            return ThreadPoolExecutor(
+                threads, threads, 30, TimeUnit.SECONDS, LinkedBlockingQueue()
+            ) { r ->
+                Thread(r, "$name-${counter.incrementAndGet()}").apply { isDaemon = true }
+            }.apply { allowCoreThreadTimeOut(true) }
+        }
+
+        /**
+         * 组包与入队都在这里进行，线程数固定，批量发包时不会无限制地创建线程
+         */
+        private val sendExecutor: ExecutorService by lazy { newPool("WeKit-CgiSend", SEND_THREADS) }
+
+        /**
+         * 回包的 JSON 解码在这里进行，不占用宿主的网络回调线程
+         */
+        private val decodeExecutor: ExecutorService by lazy { newPool("WeKit-CgiDecode", DECODE_THREADS) }
+
+        /**
+         * future 异常结束时对应的失败结果：只有超时记为 ERR_TIMEOUT，取消记为 ERR_CANCELLED，其余异常记为 -1
+         */
+        private fun failureOf(request: CgiRequest, error: Throwable?): CgiResult {
+            val cause = if (error is CompletionException) error.cause ?: error else error
+            return when (cause) {
+                is TimeoutException -> CgiResult.fail(request, ERR_TIMEOUT, -1, cause.message ?: "请求超时")
+                is CancellationException -> CgiResult.fail(request, ERR_CANCELLED, -1, cause.message ?: "请求已取消")
+                else -> CgiResult.fail(request, -1, -1, cause?.message ?: cause?.javaClass?.name ?: "未知错误")
+            }
+        }
+
+        private fun deliverSuccess(cgiId: Int, callback: WeReqCallback, bytes: ByteArray?) {
+            val target = callback.executor ?: mainExecutor
+            if (!callback.needsJson) {
+                target.execute { callback.onSuccess("", bytes) }
+                return
+            }
+            decodeExecutor.execute {
+                val json = try {
+                    if (bytes != null) WeProtoJsonCodec.toJson(bytes, NativeSchema.response(cgiId)) else "{}"
+                } catch (e: Throwable) {
+                    WeLogger.w(TAG, "[$cgiId] 回包解码失败: ${e.message}")
+                    "{}"
+                }
+                target.execute { callback.onSuccess(json, bytes) }
+            }
+        }
+
+        private fun deliverFail(callback: WeReqCallback, errType: Int, errCode: Int, errMsg: String) {
+            (callback.executor ?: mainExecutor).execute { callback.onFail(errType, errCode, errMsg) }
+        }
     }
 
     override fun entry(classLoader: ClassLoader) {
@@ -74,6 +162,8 @@ class WePkgHelper : ApiHookItem(), IDexFind {
         cgiReqClassMap[522] = dexClsNewSendMsgReq.clazz
         cgiReqClassMap[681] = dexClsOplogReq.clazz
 
+        NativeMap.SIGNERS.forEach { registerSigner(it) }
+        registerSigner(SendPatSigner { dexClsNetScenePat.clazz })
 
         WeLogger.i(TAG, "WePkgHelper 核心组件已加载")
     }
@@ -391,23 +481,175 @@ class WePkgHelper : ApiHookItem(), IDexFind {
         return false
     }
 
+    /**
+     * 注册签名器，同一 cgiId 以后注册的为准
+     */
+    @Synchronized
+    fun registerSigner(signer: ISigner) {
+        classLoader?.let { loader ->
+            try {
+                signer.prepare(loader)
+            } catch (e: Throwable) {
+                WeLogger.e(TAG, "签名器 ${signer.javaClass.name} 初始化失败", e)
+            }
+        }
+        val next = signerTable.clone()
+        for (id in signer.cgiIds) next.put(id, signer)
+        signerTable = next
+    }
+
+    @Synchronized
+    fun unregisterSigner(signer: ISigner) {
+        val next = signerTable.clone()
+        for (id in signer.cgiIds) if (next.get(id) === signer) next.remove(id)
+        signerTable = next
+    }
+
     fun sendCgi(uri: String, cgiId: Int, funcId: Int, routeId: Int, jsonPayload: String, dslBlock: WeReqDsl.() -> Unit) {
         val dsl = WeReqDsl().apply(dslBlock)
         sendCgi(uri, cgiId, funcId, routeId, jsonPayload, dsl as WeReqCallback)
     }
 
     fun sendCgi(uri: String, cgiId: Int, funcId: Int, routeId: Int, jsonPayload: String, callback: WeReqCallback? = null) {
-        val loader = classLoader ?: return
-        Thread {
+        if (cacheable(cgiId)) {
+            // 走缓存的 CGI 统一经过 future 路径，再转回回调
+            val request = CgiRequest(uri, cgiId, funcId, routeId, jsonPayload)
+            sendCgiAsync(request).whenComplete { result, error ->
+                val cb = callback ?: return@whenComplete
+                val r = result ?: failureOf(request, error)
+                if (r.isSuccess) deliverSuccess(cgiId, cb, r.bytes) else deliverFail(cb, r.errType, r.errCode, r.errMsg)
+            }
+            return
+        }
+        submit(uri, cgiId, funcId, routeId, jsonPayload, DEFAULT_TIMEOUT_MS, null, callback)
+    }
+
+    private fun cacheable(cgiId: Int) = WePkgCache.policyOf(cgiId) != null && signerTable.get(cgiId) == null
+
+    /**
+     * 异步发包，future 在解码线程上完成，CgiResult.json 在首次访问时才解码
+     * 微信返回的错误以失败的 CgiResult 表示；超过 timeoutMs 未回包时以 TimeoutException 结束，
+     * 调用方 cancel 时注销原生回调并丢弃之后的回包
+     * NativeMap.CACHE_POLICY 中登记的 cgiId 会先查 WePkgCache，并与在途的相同请求合并；
+     * 命中缓存时 cancel 不起作用，合并到在途请求（dedupInFlight）时 cancel 只让本调用方不再等待，网络请求继续供其他调用方使用
+     */
+    fun sendCgiAsync(request: CgiRequest, timeoutMs: Long = DEFAULT_TIMEOUT_MS): CompletableFuture<CgiResult> {
+        val policy = WePkgCache.policyOf(request.cgiId)
+        if (policy != null && cacheable(request.cgiId)) {
+            val body = try {
+                ProtoJsonBuilder.makeBytes(request.jsonPayload)
+            } catch (e: Throwable) {
+                null
+            }
+            if (body != null) {
+                return WePkgCache.getOrLoad(request, body, policy) { sendCgiUncached(request, timeoutMs, body) }
+            }
+        }
+        return sendCgiUncached(request, timeoutMs)
+    }
+
+    /**
+     * body 为已编码好的请求体时直接使用，避免再次从 JSON 编码
+     */
+    private fun sendCgiUncached(request: CgiRequest, timeoutMs: Long, body: ByteArray? = null): CompletableFuture<CgiResult> {
+        val future = CompletableFuture<CgiResult>()
+        val call = submit(
+            request.uri, request.cgiId, request.funcId, request.routeId, request.jsonPayload, timeoutMs, body,
+            object : WeReqCallback {
+                override val needsJson get() = false
+                override val executor: Executor get() = decodeExecutor
+
+                override fun onSuccess(json: String, bytes: ByteArray?) {
+                    future.complete(CgiResult(request, bytes))
+                }
+
+                override fun onFail(errType: Int, errCode: Int, errMsg: String) {
+                    if (errType == ERR_TIMEOUT) {
+                        future.completeExceptionally(TimeoutException("[${request.cgiId}] $errMsg"))
+                    } else {
+                        future.complete(CgiResult.fail(request, errType, errCode, errMsg))
+                    }
+                }
+            }
+        )
+        if (call == null) {
+            future.complete(CgiResult.fail(request, -1, -1, "WePkgHelper 未初始化"))
+        } else {
+            future.whenComplete { _, _ -> if (future.isCancelled) call.cancel(ERR_CANCELLED, "已取消") }
+        }
+        return future
+    }
+
+    /**
+     * 挂起版本，协程取消时同样会取消请求；并发等待多个请求可配合 coroutineScope + async 使用
+     */
+    suspend fun sendCgiAwait(request: CgiRequest, timeoutMs: Long = DEFAULT_TIMEOUT_MS): CgiResult =
+        sendCgiAsync(request, timeoutMs).await()
+
+    /**
+     * 一次在途的发包，回包、超时与取消之中只有先到的一个生效
+     * 生效后释放用户回调，即使宿主一直持有代理对象也不会泄漏调用方捕获的对象
+     */
+    private class PendingCall(callback: WeReqCallback?) {
+        @Volatile
+        private var callback: WeReqCallback = callback ?: NoopCallback
+        private val settled = AtomicBoolean()
+
+        // 原生模式下注销 onSceneEnd 监听
+        @Volatile
+        var unregister: (() -> Unit)? = null
+
+        val timeoutTask = Runnable { cancel(ERR_TIMEOUT, "请求超时") }
+
+        val isSettled: Boolean
+            get() = settled.get()
+
+        /**
+         * 抢占结果，已被其他路径抢占时返回 null
+         */
+        fun settle(): WeReqCallback? {
+            if (!settled.compareAndSet(false, true)) return null
+            mainHandler.removeCallbacks(timeoutTask)
+            unregister = null
+            return callback.also { callback = NoopCallback }
+        }
+
+        fun cancel(errType: Int, errMsg: String) {
+            val detach = unregister
+            val cb = settle() ?: return
+            try {
+                detach?.invoke()
+            } catch (e: Throwable) {
+                WeLogger.w(TAG, "注销原生回调失败: ${e.message}")
+            }
+            deliverFail(cb, errType, -1, errMsg)
+        }
+    }
+
+    private object NoopCallback : WeReqCallback {
+        override fun onSuccess(json: String, bytes: ByteArray?) {}
+        override fun onFail(errType: Int, errCode: Int, errMsg: String) {}
+    }
+
+    private fun submit(
+        uri: String, cgiId: Int, funcId: Int, routeId: Int, jsonPayload: String,
+        timeoutMs: Long, body: ByteArray?, callback: WeReqCallback?
+    ): PendingCall? {
+        val loader = classLoader ?: return null
+        val call = PendingCall(callback)
+        if (timeoutMs > 0) mainHandler.postDelayed(call.timeoutTask, timeoutMs)
+        sendExecutor.execute {
+            // 排队期间已超时或被取消
+            if (call.isSettled) return@execute
             try {
-                var jsonObj = JSONObject(jsonPayload)
+                var jsonObj: JSONObject? = null
                 var nativeNetScene: Any? = null
                 var successAction: (() -> Unit)? = null
 
                 // 签名分发
-                val signer = signers.firstOrNull { it.match(cgiId) }
+                val signer = signerTable.get(cgiId)
                 if (signer != null) {
-                    val result = signer.sign(loader, jsonObj)
+                    val result = signer.sign(loader, JSONObject(jsonPayload))
                     jsonObj = result.json
                     nativeNetScene = result.nativeNetScene
                     successAction = result.onSendSuccess
@@ -435,7 +677,7 @@ class WePkgHelper : ApiHookItem(), IDexFind {
                                 WeLogger.w(TAG, "注销原生回调失败: ${e.message}")
                             }
 
-                            NativeResponseHandler(cgiId, callback, successAction).invoke(
+                            NativeResponseHandler(cgiId, call, successAction).invoke(
                                 proxy,
                                 method,
                                 args
@@ -447,12 +689,17 @@ class WePkgHelper : ApiHookItem(), IDexFind {
 
                     // 注册并入队
                     XposedHelpers.callMethod(netQueue, "a", cgiType, callbackProxy)
+                    call.unregister = { XposedHelpers.callMethod(netQueue, "q", cgiType, callbackProxy) }
+                    if (call.isSettled) {
+                        XposedHelpers.callMethod(netQueue, "q", cgiType, callbackProxy)
+                        return@execute
+                    }
                     XposedHelpers.callMethod(netQueue, "g", nativeNetScene)
 
                     WeLogger.i(TAG, "[$cgiId] 原生模式：已注册监听并入队发送")
                 } else {
-                    // 通用发包模式
-                    val bytes = ProtoJsonBuilder.makeBytes(jsonObj)
+                    // 通用发包模式，未经签名器改写时优先使用调用方已编码的请求体，否则从 JSON 文本编码
+                    val bytes = jsonObj?.let { ProtoJsonBuilder.makeBytes(it) } ?: body ?: ProtoJsonBuilder.makeBytes(jsonPayload)
 
                     val finalReqObject: Any
 
@@ -488,32 +735,109 @@ class WePkgHelper : ApiHookItem(), IDexFind {
                     val cbProxy = Proxy.newProxyInstance(
                         loader,
                         arrayOf(dexClsCallbackIface.clazz),
-                        ResponseHandler(cgiId, callback, successAction)
-                    )
-
-                    val methodD = XposedHelpers.findMethodExact(
-                        dexClsNetDispatcher.clazz,
-                        "d",
-                        dexClsReqResp.clazz,
-                        dexClsCallbackIface.clazz,
-                        Boolean::class.javaPrimitiveType
+                        ResponseHandler(cgiId, call, successAction)
                     )
 
                     WeLogger.i(TAG, "[$cgiId] 通用发送中...")
-                    methodD.invoke(null, rr, cbProxy, false)
+                    dispatchMethod.invoke(null, rr, cbProxy, false)
                 }
 
             } catch (e: Throwable) {
                 WeLogger.e(TAG, "[$cgiId] 引擎异常", e)
-                Handler(Looper.getMainLooper()).post { callback?.onFail(-1, -1, e.message ?: "") }
+                call.settle()?.let { deliverFail(it, -1, -1, e.message ?: "") }
+            }
+        }
+        return call
+    }
+
+    /**
+     * 批量发包
+     * 同时在途的请求不超过 maxConcurrency 个，一个请求结束后才补发下一个；
+     * coalesce 为 true 时同一批中完全相同的请求只发送一次并共享结果（带签名器的 CGI 每次都会重新签名，不参与合并）
+     * 全部结束后在主线程回调 onComplete，结果顺序与 requests 一致
+     */
+    fun sendCgiBatch(
+        requests: List<CgiRequest>,
+        maxConcurrency: Int = DEFAULT_BATCH_CONCURRENCY,
+        coalesce: Boolean = true,
+        timeoutMs: Long = DEFAULT_TIMEOUT_MS,
+        onComplete: ((List<CgiResult>) -> Unit)? = null
+    ): CompletableFuture<List<CgiResult>> {
+        val future = CompletableFuture<List<CgiResult>>()
+        onComplete?.let { action ->
+            future.thenAccept { results -> mainHandler.post { action(results) } }
+        }
+        if (requests.isEmpty()) {
+            future.complete(emptyList())
+            return future
+        }
+        if (classLoader == null) {
+            future.complete(requests.map { CgiResult.fail(it, -1, -1, "WePkgHelper 未初始化") })
+            return future
+        }
+
+        // unique 中每一项对应 requests 里的若干下标
+        val unique = ArrayList<CgiRequest>()
+        val targets = ArrayList<MutableList<Int>>()
+        val seen = HashMap<CgiRequest, Int>()
+        requests.forEachIndexed { index, req ->
+            val slot = if (coalesce && signerTable.get(req.cgiId) == null) seen[req] else null
+            if (slot != null) {
+                targets[slot].add(index)
+            } else {
+                seen[req] = unique.size
+                unique.add(req)
+                targets.add(arrayListOf(index))
+            }
+        }
+        if (unique.size < requests.size) {
+            WeLogger.i(TAG, "批量发包: ${requests.size} 个请求合并为 ${unique.size} 个")
+        }
+
+        val results = arrayOfNulls<CgiResult>(requests.size)
+        val cursor = AtomicInteger()
+        val remaining = AtomicInteger(unique.size)
+
+        fun finish(slot: Int, result: CgiResult) {
+            for (index in targets[slot]) results[index] = result
+            if (remaining.decrementAndGet() == 0) {
+                @Suppress("UNCHECKED_CAST")
+                future.complete(results.asList() as List<CgiResult>)
+            }
+        }
+
+        fun finish(slot: Int, result: CgiResult?, error: Throwable?) {
+            finish(slot, result ?: failureOf(unique[slot], error))
+        }
+
+        // 每条通道串行地领取下一个请求，通道数即最大在途数
+        // 缓存命中时 future 已经完成，在循环里直接处理，避免 whenComplete 同步回调造成逐个请求的递归
+        fun lane() {
+            while (true) {
+                val slot = cursor.getAndIncrement()
+                if (slot >= unique.size) return
+                val pending = sendCgiAsync(unique[slot], timeoutMs)
+                if (pending.isDone) {
+                    pending.handle { result, error -> finish(slot, result, error) }
+                    continue
+                }
+                pending.whenComplete { result, error ->
+                    finish(slot, result, error)
+                    lane()
+                }
+                return
             }
-        }.start()
+        }
+
+        repeat(maxConcurrency.coerceIn(1, unique.size)) { lane() }
+        return future
     }
 
     // 处理原生 NetScene 的回调
+    // 在宿主线程上只取出回包字节，解码与用户回调交给 deliverSuccess
     private class NativeResponseHandler(
         val cgiId: Int,
-        val userCallback: WeReqCallback?,
+        val call: PendingCall,
         val successAction: (() -> Unit)?
     ) : InvocationHandler {
         override fun invoke(proxy: Any, method: Method, args: Array<out Any>?): Any? {
@@ -526,43 +850,37 @@ class WePkgHelper : ApiHookItem(), IDexFind {
                 val errMsg = args[2] as? String ?: "null"
                 val netScene = args[3]
 
-                Handler(Looper.getMainLooper()).post {
-                    if (errType == 0 && errCode == 0) {
-                        successAction?.invoke()
-
-                        var bytes: ByteArray? = null
-                        var json = "{}"
+                val userCallback = call.settle() ?: return null
+                if (errType == 0 && errCode == 0) {
+                    successAction?.let { mainHandler.post(it) }
 
-                        try {
-                            val loader = netScene.javaClass.classLoader
-                            val v0Class = XposedHelpers.findClass("com.tencent.mm.network.v0", loader)
-                            val rrField = netScene.javaClass.declaredFields.firstOrNull {
-                                v0Class.isAssignableFrom(it.type)
-                            }
-
-                            val rrObj = if (rrField != null) {
-                                rrField.isAccessible = true
-                                rrField.get(netScene)
-                            } else {
-                                XposedHelpers.getObjectField(netScene, "d")
-                            }
+                    var bytes: ByteArray? = null
+                    try {
+                        val loader = netScene.javaClass.classLoader
+                        val v0Class = XposedHelpers.findClass("com.tencent.mm.network.v0", loader)
+                        val rrField = netScene.javaClass.declaredFields.firstOrNull {
+                            v0Class.isAssignableFrom(it.type)
+                        }
 
-                            if (rrObj != null) {
-                                val respWrapper = XposedHelpers.getObjectField(rrObj, "b")
-                                val protoObj = XposedHelpers.getObjectField(respWrapper, "a")
-                                bytes = XposedHelpers.callMethod(protoObj, "toByteArray") as? ByteArray
-                                if (bytes != null) {
-                                    json = WeProtoData().also { it.fromBytes(bytes) }.toJSON().toString()
-                                }
-                            }
-                        } catch (e: Throwable) {
-                            WeLogger.w("NativeResponseHandler", "提取回包 Bytes 失败: ${e.message}")
+                        val rrObj = if (rrField != null) {
+                            rrField.isAccessible = true
+                            rrField.get(netScene)
+                        } else {
+                            XposedHelpers.getObjectField(netScene, "d")
                         }
 
-                        userCallback?.onSuccess(json, bytes)
-                    } else {
-                        userCallback?.onFail(errType, errCode, errMsg)
+                        if (rrObj != null) {
+                            val respWrapper = XposedHelpers.getObjectField(rrObj, "b")
+                            val protoObj = XposedHelpers.getObjectField(respWrapper, "a")
+                            bytes = XposedHelpers.callMethod(protoObj, "toByteArray") as? ByteArray
+                        }
+                    } catch (e: Throwable) {
+                        WeLogger.w("NativeResponseHandler", "提取回包 Bytes 失败: ${e.message}")
                     }
+
+                    deliverSuccess(cgiId, userCallback, bytes)
+                } else {
+                    deliverFail(userCallback, errType, errCode, errMsg)
                 }
             }
             return null
@@ -572,7 +890,7 @@ class WePkgHelper : ApiHookItem(), IDexFind {
     // 处理通用发包的回调
     private class ResponseHandler(
         val cgiId: Int,
-        val userCallback: WeReqCallback?,
+        val call: PendingCall,
         val successAction: (() -> Unit)?
     ) : InvocationHandler {
         override fun invoke(proxy: Any, method: Method, args: Array<out Any>?): Any? {
@@ -581,28 +899,29 @@ class WePkgHelper : ApiHookItem(), IDexFind {
                 val errType = args[0] as Int
                 val errCode = args[1] as Int
                 val reqResp = args[3]
-                Handler(Looper.getMainLooper()).post {
-                    if (errType == 0 && errCode == 0) {
-                        successAction?.invoke()
+                val userCallback = call.settle() ?: return 0
+                if (errType == 0 && errCode == 0) {
+                    successAction?.let { mainHandler.post(it) }
+                    val bytes = try {
                         val respWrapper = XposedHelpers.getObjectField(reqResp, "b")
                         val yd = XposedHelpers.getObjectField(respWrapper, "a")
-                        val bytes = try {
+                        try {
                             XposedHelpers.callMethod(yd, "initialProtobufBytes") as? ByteArray
                         } catch (_: Throwable) {
                             null
                         }
                             ?: XposedHelpers.callMethod(yd, "toByteArray") as? ByteArray
-                        val json =
-                            if (bytes != null) WeProtoData().also { it.fromBytes(bytes) }.toJSON()
-                                .toString() else "{}"
-                        userCallback?.onSuccess(json, bytes)
-                    } else {
-                        userCallback?.onFail(errType, errCode, args[2] as? String ?: "null (No Error Message)")
+                    } catch (e: Throwable) {
+                        WeLogger.w("ResponseHandler", "提取回包 Bytes 失败: ${e.message}")
+                        null
                     }
+                    deliverSuccess(cgiId, userCallback, bytes)
+                } else {
+                    deliverFail(userCallback, errType, errCode, args[2] as? String ?: "null (No Error Message)")
                 }
                 return 0
             }
             return null
         }
     }
-}
\ No newline at end of file
+}
@@ -1,47 +1,203 @@
 package moe.ouom.wekit.hooks.sdk.protocol
 
+import android.util.SparseArray
 import moe.ouom.wekit.config.WeConfig
 import moe.ouom.wekit.constants.Constants
 import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgInterceptor
-import moe.ouom.wekit.util.WeProtoData
+import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgObserver
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgEvent
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgPacket
+import moe.ouom.wekit.util.WeProtoJsonCodec
+import moe.ouom.wekit.util.log.StackSampler
 import moe.ouom.wekit.util.log.WeLogger
-import java.util.concurrent.CopyOnWriteArrayList
 
 object WePkgManager {
-    private val listeners = CopyOnWriteArrayList<IWePkgInterceptor>()
 
-    fun addInterceptor(interceptor: IWePkgInterceptor) = listeners.addIfAbsent(interceptor)
+    /**
+     * 一条注册记录，cgiIds 为空表示匹配所有 cgiId；uriPattern 非空时还需 uri 包含匹配
+     * priority 越大越先执行，相同优先级按注册顺序
+     */
+    private class Route(
+        val interceptor: IWePkgInterceptor,
+        val cgiIds: IntArray,
+        val uriPattern: Regex?,
+        val priority: Int
+    ) {
+        fun matches(uri: String) = uriPattern == null || uriPattern.containsMatchIn(uri)
+    }
+
+    /**
+     * 按 cgiId 索引的不可变路由表，每个桶已按执行顺序合并了通配路由
+     * 注册变化时整体重建，分发时只读，不产生分配
+     */
+    private class RouteTable(registered: List<Route>) {
+        private val routes = registered.sortedByDescending { it.priority }
+        val wildcard: Array<Route> = routes.filter { it.cgiIds.isEmpty() }.toTypedArray()
+        val byCgi = SparseArray<Array<Route>>()
+
+        init {
+            for (route in routes) {
+                for (id in route.cgiIds) {
+                    if (byCgi.get(id) != null) continue
+                    byCgi.put(id, routes.filter { it.cgiIds.isEmpty() || id in it.cgiIds }.toTypedArray())
+                }
+            }
+        }
+
+        fun routesFor(cgiId: Int): Array<Route> = byCgi.get(cgiId) ?: wildcard
+    }
+
+    private val routes = ArrayList<Route>()
+
+    @Volatile
+    private var table = RouteTable(emptyList())
+
+    /**
+     * 注册拦截器，cgiIds 为空时接收所有数据包
+     */
+    @Synchronized
+    fun addInterceptor(interceptor: IWePkgInterceptor, vararg cgiIds: Int, priority: Int = 0): Boolean =
+        addRoute(Route(interceptor, cgiIds.distinct().toIntArray(), null, priority))
+
+    /**
+     * 注册只接收 uri 匹配 uriPattern 的拦截器
+     */
+    @Synchronized
+    fun addInterceptor(interceptor: IWePkgInterceptor, uriPattern: Regex, priority: Int = 0): Boolean =
+        addRoute(Route(interceptor, IntArray(0), uriPattern, priority))
+
+    private fun addRoute(route: Route): Boolean {
+        if (routes.any { it.interceptor === route.interceptor }) return false
+        routes.add(route)
+        table = RouteTable(routes)
+        return true
+    }
+
+    @Synchronized
+    fun removeInterceptor(interceptor: IWePkgInterceptor): Boolean {
+        if (!routes.removeAll { it.interceptor === interceptor }) return false
+        table = RouteTable(routes)
+        return true
+    }
+
+    /**
+     * 注册只读观察者，在后台线程异步接收数据包快照
+     */
+    fun addObserver(observer: IWePkgObserver) = WePkgObserverBus.add(observer)
+
+    fun removeObserver(observer: IWePkgObserver) = WePkgObserverBus.remove(observer)
+
+    private fun verboseLog() = WeConfig.dGetBoolean(Constants.PrekVerboseLog)
 
-    fun removeInterceptor(interceptor: IWePkgInterceptor) = listeners.remove(interceptor)
+    /**
+     * 详细日志作为观察者运行，JSON 转换与日志输出都不在网络线程上进行
+     */
+    private object VerboseLogObserver : IWePkgObserver {
+        override fun wantsPacket(uri: String, cgiId: Int) = verboseLog()
+
+        override fun onPacket(event: WePkgEvent) {
+            val uri = event.uri
+            val cgiId = event.cgiId
+            val bytes = event.bytes
+            if (event.isRequest) {
+                val data = WeProtoJsonCodec.toJson(bytes, NativeSchema.request(cgiId))
+                val stack = event.stack?.let { StackSampler.format(it) } ?: "-"
+                WeLogger.logChunkedI("WePkgInterceptor-Request",
+                    "Request: $uri, CGI=$cgiId, LEN=${bytes.size}, Data=$data, Stack=$stack"
+                )
+            } else {
+                val data = WeProtoJsonCodec.toJson(bytes, NativeSchema.response(cgiId))
+                WeLogger.logChunkedI("WePkgInterceptor-Response",
+                    "Received: $uri, CGI=$cgiId, LEN=${bytes.size}, Data=$data"
+                )
+            }
+        }
+    }
+
+    init {
+        WePkgObserverBus.add(VerboseLogObserver)
+    }
+
+    /**
+     * 是否有拦截器、观察者或抓包需要该请求，为 false 时 dispatcher 不必序列化请求
+     */
+    internal fun wantsRequest(uri: String, cgiId: Int): Boolean {
+        if (WePkgCapture.enabled || WePkgObserverBus.wants(uri, cgiId)) return true
+        for (route in table.routesFor(cgiId)) {
+            if (route.matches(uri) && route.interceptor.wantsRequest(uri, cgiId)) return true
+        }
+        return false
+    }
+
+    /**
+     * 是否有拦截器、观察者或抓包需要该回包，为 false 时 dispatcher 不必代理回调
+     */
+    internal fun wantsResponse(uri: String, cgiId: Int): Boolean {
+        if (WePkgCapture.enabled || WePkgObserverBus.wants(uri, cgiId)) return true
+        for (route in table.routesFor(cgiId)) {
+            if (route.matches(uri) && route.interceptor.wantsResponse(uri, cgiId)) return true
+        }
+        return false
+    }
 
     internal fun handleRequestTamper(uri: String, cgiId: Int, reqBytes: ByteArray): ByteArray? {
-        if (WeConfig.dGetBoolean(Constants.PrekVerboseLog)) {
-            val data = WeProtoData()
-            data.fromBytes(reqBytes)
-            WeLogger.logChunkedI("WePkgInterceptor-Request",
-                "Request: $uri, CGI=$cgiId, LEN=${reqBytes.size}, Data=${data.toJSON()}, Stack=${WeLogger.getStackTraceString()}"
-            )
+        // 所有匹配的拦截器依次处理同一个数据包，共享一次解析与一次序列化
+        var packet: WePkgPacket? = null
+        val stats = WePkgStats.enabled
+        val chainStart = if (stats) System.nanoTime() else 0L
+        for (route in table.routesFor(cgiId)) {
+            val listener = route.interceptor
+            if (!route.matches(uri) || !listener.wantsRequest(uri, cgiId)) continue
+            val p = packet ?: WePkgPacket(uri, cgiId, reqBytes, NativeSchema.request(cgiId)).also { packet = it }
+            val start = if (stats) System.nanoTime() else 0L
+            try {
+                listener.onRequest(p)
+            } catch (e: Throwable) {
+                WeLogger.e("WePkgManager", "拦截器 ${listener.javaClass.name} 处理请求失败", e)
+            }
+            if (stats) WePkgStats.recordInterceptor(listener, System.nanoTime() - start)
         }
+        val result = packet?.result()
+        // 整条拦截链每个数据包只记录一次，包含 result() 中的重新序列化
+        if (stats && packet != null) WePkgStats.recordChain(uri, cgiId, System.nanoTime() - chainStart)
+        WePkgCapture.capture(true, uri, cgiId, result ?: reqBytes)
 
-        for (listener in listeners) {
-            val tampered = listener.onRequest(uri, cgiId, reqBytes)
-            if (tampered != null) return tampered
+        if (WePkgObserverBus.wants(uri, cgiId)) {
+            // 调用栈只能在当前线程采集，按采样率决定是否采集，去重与格式化留给观察者线程
+            val stack = if (verboseLog() && StackSampler.shouldSample(cgiId)) Thread.currentThread().stackTrace else null
+            WePkgObserverBus.publish(
+                WePkgEvent(true, uri, cgiId, result ?: reqBytes, System.currentTimeMillis(), stack)
+            )
         }
-        return null
+        return result
     }
 
     internal fun handleResponseTamper(uri: String, cgiId: Int, respBytes: ByteArray): ByteArray? {
-        if (WeConfig.dGetBoolean(Constants.PrekVerboseLog)) {
-            val data = WeProtoData()
-            data.fromBytes(respBytes)
-            WeLogger.logChunkedI("WePkgInterceptor-Response",
-                "Received: $uri, CGI=$cgiId, LEN=${respBytes.size}, Data=${data.toJSON()}"
-            )
+        var packet: WePkgPacket? = null
+        val stats = WePkgStats.enabled
+        val chainStart = if (stats) System.nanoTime() else 0L
+        for (route in table.routesFor(cgiId)) {
+            val listener = route.interceptor
+            if (!route.matches(uri) || !listener.wantsResponse(uri, cgiId)) continue
+            val p = packet ?: WePkgPacket(uri, cgiId, respBytes, NativeSchema.response(cgiId)).also { packet = it }
+            val start = if (stats) System.nanoTime() else 0L
+            try {
+                listener.onResponse(p)
+            } catch (e: Throwable) {
+                WeLogger.e("WePkgManager", "拦截器 ${listener.javaClass.name} 处理回包失败", e)
+            }
+            if (stats) WePkgStats.recordInterceptor(listener, System.nanoTime() - start)
         }
-        for (listener in listeners) {
-            val tampered = listener.onResponse(uri, cgiId, respBytes)
-            if (tampered != null) return tampered
+        val result = packet?.result()
+        // 整条拦截链每个数据包只记录一次，包含 result() 中的重新序列化
+        if (stats && packet != null) WePkgStats.recordChain(uri, cgiId, System.nanoTime() - chainStart)
+        WePkgCapture.capture(false, uri, cgiId, result ?: respBytes)
+
+        if (WePkgObserverBus.wants(uri, cgiId)) {
+            WePkgObserverBus.publish(
+                WePkgEvent(false, uri, cgiId, result ?: respBytes, System.currentTimeMillis())
+            )
         }
-        return null
+        return result
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package moe.ouom.wekit.hooks.sdk.protocol
+
+import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgObserver
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgEvent
+import moe.ouom.wekit.util.common.EventRing
+import moe.ouom.wekit.util.log.WeLogger
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * 观察者分发：网络线程只把快照写入有界环形队列，由单个后台线程依次交给各观察者
+ */
+internal object WePkgObserverBus {
+    private const val TAG = "WePkgObserverBus"
+    private const val CAPACITY = 1024
+
+    @Volatile
+    private var observers = emptyArray<IWePkgObserver>()
+
+    private val ring = EventRing<WePkgEvent>(CAPACITY)
+
+    @Volatile
+    private var waiting = false
+
+    private val worker: Thread by lazy {
+        Thread(::drainLoop, "WeKit-PkgObserver").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    @Synchronized
+    fun add(observer: IWePkgObserver): Boolean {
+        if (observers.any { it === observer }) return false
+        observers += observer
+        return true
+    }
+
+    @Synchronized
+    fun remove(observer: IWePkgObserver): Boolean {
+        val next = observers.filter { it !== observer }.toTypedArray()
+        if (next.size == observers.size) return false
+        observers = next
+        return true
+    }
+
+    fun wants(uri: String, cgiId: Int): Boolean {
+        for (observer in observers) {
+            if (observer.wantsPacket(uri, cgiId)) return true
+        }
+        return false
+    }
+
+    /**
+     * 发布快照，队列满时直接丢弃
+     */
+    fun publish(event: WePkgEvent) {
+        if (!ring.offer(event)) return
+        val t = worker
+        if (waiting) LockSupport.unpark(t)
+    }
+
+    private fun drainLoop() {
+        var reportedDrops = 0L
+        while (true) {
+            val event = ring.poll()
+            if (event == null) {
+                val dropped = ring.droppedCount()
+                if (dropped != reportedDrops) {
+                    WeLogger.w(TAG, "观察者处理过慢，已丢弃 ${dropped - reportedDrops} 个事件")
+                    reportedDrops = dropped
+                }
+                waiting = true
+                // 置位后再检查一次，避免与 publish 之间丢失唤醒
+                val late = ring.poll()
+                if (late == null) LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1))
+                waiting = false
+                if (late != null) dispatch(late)
+                continue
+            }
+            dispatch(event)
+        }
+    }
+
+    private fun dispatch(event: WePkgEvent) {
+        for (observer in observers) {
+            try {
+                if (observer.wantsPacket(event.uri, event.cgiId)) observer.onPacket(event)
+            } catch (e: Throwable) {
+                WeLogger.e(TAG, "观察者 ${observer.javaClass.name} 处理失败", e)
+            }
+        }
+    }
+}
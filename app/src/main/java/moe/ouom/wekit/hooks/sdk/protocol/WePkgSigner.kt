@@ -8,12 +8,13 @@ import moe.ouom.wekit.hooks.sdk.protocol.intf.ISigner
 import moe.ouom.wekit.hooks.sdk.protocol.model.SignResult
 import moe.ouom.wekit.util.log.WeLogger
 import org.json.JSONObject
+import java.lang.reflect.Constructor
 
 /**
  * 消息发送签名器 (CGI 522)
  */
 class NewSendMsgSigner : ISigner {
-    override fun match(cgiId: Int) = (cgiId == 522)
+    override val cgiIds = intArrayOf(522)
     override fun sign(loader: ClassLoader, json: JSONObject): SignResult {
         val selfWxid = getSelfWxId()
 
@@ -36,7 +37,7 @@ class NewSendMsgSigner : ISigner {
  * AppMsg 签名注入 (CGI 222)
  */
 class AppMsgSigner : ISigner {
-    override fun match(cgiId: Int) = (cgiId == 222)
+    override val cgiIds = intArrayOf(222)
     override fun sign(loader: ClassLoader, json: JSONObject): SignResult {
         val innerMsg = json.optJSONObject("2") ?: return SignResult(json)
         val toUser = innerMsg.optString("4")
@@ -60,7 +61,7 @@ class AppMsgSigner : ISigner {
  * 表情签名器 (CGI 175)
  */
 class EmojiSigner : ISigner {
-    override fun match(cgiId: Int) = (cgiId == 175)
+    override val cgiIds = intArrayOf(175)
     override fun sign(loader: ClassLoader, json: JSONObject): SignResult {
         val tag3Obj = json.optJSONObject("3")
         if (tag3Obj != null) {
@@ -75,10 +76,25 @@ class EmojiSigner : ISigner {
  * 拍一拍签名器 (CGI 849)
  */
 class SendPatSigner(private val clsProvider: () -> Class<*>?) : ISigner {
-    override fun match(cgiId: Int) = (cgiId == 849)
+    override val cgiIds = intArrayOf(849)
+
+    // NetScenePat(Pair, String, String, int)
+    @Volatile
+    private var constructor: Constructor<*>? = null
+
+    override fun prepare(loader: ClassLoader) {
+        val cls = clsProvider() ?: return
+        constructor = XposedHelpers.findConstructorBestMatch(
+            cls,
+            android.util.Pair::class.java,
+            String::class.java,
+            String::class.java,
+            Int::class.javaPrimitiveType
+        )
+    }
 
     override fun sign(loader: ClassLoader, json: JSONObject): SignResult {
-        val cls = clsProvider() ?: return SignResult(json)
+        val ctor = constructor ?: return SignResult(json)
 
         try {
             val toUser = json.optString("3")
@@ -88,8 +104,7 @@ class SendPatSigner(private val clsProvider: () -> Class<*>?) : ISigner {
             // wxid_xxxxx_761663_1770315448000
             val validPair = android.util.Pair(previewNextId("message"), System.currentTimeMillis())
 
-            val nativeScene = XposedHelpers.newInstance(
-                cls,
+            val nativeScene = ctor.newInstance(
                 validPair,   // Pair
                 toUser,      // String
                 pattedUser,  // String
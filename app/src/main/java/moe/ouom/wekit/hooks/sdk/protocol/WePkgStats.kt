@@ -0,0 +1,161 @@
+package moe.ouom.wekit.hooks.sdk.protocol
+
+import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgInterceptor
+import moe.ouom.wekit.util.common.LogHistogram
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 按 cgiId 统计网络耗时、包大小与拦截器耗时
+ * 未开启时各记录入口只读一次 volatile 标志；开启后记录只做原子加，不加锁
+ */
+object WePkgStats {
+
+    private const val DUMP_MAGIC = 0x574B5354 // "WKST"
+    // 2: interceptNs 改为每个数据包整条拦截链的耗时
+    private const val DUMP_VERSION = 2
+
+    @Volatile
+    var enabled = false
+
+    @Volatile
+    var since = System.currentTimeMillis()
+        private set
+
+    class CgiStats internal constructor(val cgiId: Int, @Volatile var uri: String) {
+        /** dispatch 到 onGYNetEnd 的耗时，微秒 */
+        val latencyUs = LogHistogram()
+        val requestBytes = LogHistogram()
+        val responseBytes = LogHistogram()
+        /** 该 CGI 每个数据包经过整条拦截链的耗时（请求与回包，含改写后的序列化），纳秒 */
+        val interceptNs = LogHistogram()
+    }
+
+    private val cgis = ConcurrentHashMap<Int, CgiStats>()
+    private val interceptors = ConcurrentHashMap<String, LogHistogram>()
+
+    private fun cgi(uri: String, cgiId: Int): CgiStats =
+        cgis[cgiId] ?: cgis.computeIfAbsent(cgiId) { CgiStats(it, uri) }
+
+    fun recordRequest(uri: String, cgiId: Int, size: Int) {
+        cgi(uri, cgiId).requestBytes.record(size.toLong())
+    }
+
+    fun recordResponse(uri: String, cgiId: Int, size: Int) {
+        cgi(uri, cgiId).responseBytes.record(size.toLong())
+    }
+
+    fun recordLatency(uri: String, cgiId: Int, nanos: Long) {
+        cgi(uri, cgiId).latencyUs.record(nanos / 1000)
+    }
+
+    /**
+     * 一个数据包经过拦截链的总耗时，每个数据包记录一次
+     */
+    fun recordChain(uri: String, cgiId: Int, nanos: Long) {
+        cgi(uri, cgiId).interceptNs.record(nanos)
+    }
+
+    /**
+     * 单个拦截器处理一次数据包的耗时，只计入按拦截器的统计
+     */
+    fun recordInterceptor(interceptor: IWePkgInterceptor, nanos: Long) {
+        val name = interceptor.javaClass.name
+        (interceptors[name] ?: interceptors.computeIfAbsent(name) { LogHistogram() }).record(nanos)
+    }
+
+    /**
+     * 按网络总耗时从高到低排序
+     */
+    fun cgiSnapshot(): List<CgiStats> = cgis.values.sortedByDescending { it.latencyUs.sum() }
+
+    /**
+     * 各拦截器的耗时，按总耗时从高到低排序
+     */
+    fun interceptorSnapshot(): List<Pair<String, LogHistogram>> =
+        interceptors.entries.map { it.key to it.value }.sortedByDescending { it.second.sum() }
+
+    fun reset() {
+        cgis.clear()
+        interceptors.clear()
+        since = System.currentTimeMillis()
+    }
+
+    /**
+     * 可读的统计摘要，供统计界面展示
+     */
+    fun format(): String = buildString {
+        val cgiList = cgiSnapshot()
+        if (cgiList.isEmpty()) {
+            append("暂无数据")
+            return@buildString
+        }
+        for (s in cgiList) {
+            append("CGI ").append(s.cgiId).append("  ").append(s.uri).append('\n')
+            val lat = s.latencyUs
+            append("  耗时 n=").append(lat.count())
+                .append(" p50=").append(ms(lat.percentile(50.0)))
+                .append(" p99=").append(ms(lat.percentile(99.0)))
+                .append(" max=").append(ms(lat.max())).append('\n')
+            append("  请求 p50=").append(size(s.requestBytes.percentile(50.0)))
+                .append(" max=").append(size(s.requestBytes.max()))
+                .append("  回包 p50=").append(size(s.responseBytes.percentile(50.0)))
+                .append(" max=").append(size(s.responseBytes.max())).append('\n')
+            if (s.interceptNs.count() > 0) {
+                append("  拦截链 n=").append(s.interceptNs.count())
+                    .append(" 平均=").append(ms(s.interceptNs.mean() / 1000))
+                    .append(" 总计=").append(ms(s.interceptNs.sum() / 1000)).append('\n')
+            }
+        }
+        val list = interceptorSnapshot()
+        if (list.isNotEmpty()) {
+            append("\n拦截器\n")
+            for ((name, h) in list) {
+                append("  ").append(name.substringAfterLast('.'))
+                    .append(" n=").append(h.count())
+                    .append(" p99=").append(ms(h.percentile(99.0) / 1000))
+                    .append(" 总计=").append(ms(h.sum() / 1000)).append('\n')
+            }
+        }
+    }
+
+    private fun ms(us: Long) = String.format(Locale.ROOT, "%.1fms", us / 1000.0)
+
+    private fun size(bytes: Long) = when {
+        bytes >= 1 shl 20 -> String.format(Locale.ROOT, "%.1fMB", bytes / 1048576.0)
+        bytes >= 1 shl 10 -> String.format(Locale.ROOT, "%.1fKB", bytes / 1024.0)
+        else -> "${bytes}B"
+    }
+
+    /**
+     * 写出紧凑的二进制快照
+     * 格式：magic、版本、起止时间，随后每个 CGI 为 (cgiId, uri, 四个直方图)，
+     * 最后每个拦截器为 (类名, 直方图)；直方图格式见 [LogHistogram.writeTo]
+     */
+    fun dump(output: OutputStream) {
+        val out = DataOutputStream(output.buffered())
+        out.writeInt(DUMP_MAGIC)
+        out.writeByte(DUMP_VERSION)
+        out.writeLong(since)
+        out.writeLong(System.currentTimeMillis())
+        val cgiList = cgis.values.toList()
+        LogHistogram.writeVarLong(out, cgiList.size.toLong())
+        for (s in cgiList) {
+            LogHistogram.writeVarLong(out, s.cgiId.toLong() and 0xFFFFFFFFL)
+            out.writeUTF(s.uri)
+            s.latencyUs.writeTo(out)
+            s.requestBytes.writeTo(out)
+            s.responseBytes.writeTo(out)
+            s.interceptNs.writeTo(out)
+        }
+        val list = interceptors.entries.toList()
+        LogHistogram.writeVarLong(out, list.size.toLong())
+        for ((name, h) in list) {
+            out.writeUTF(name)
+            h.writeTo(out)
+        }
+        out.flush()
+    }
+}
@@ -1,14 +1,26 @@
 package moe.ouom.wekit.hooks.sdk.protocol
 
 import moe.ouom.wekit.hooks.sdk.protocol.intf.WeReqCallback
+import java.util.concurrent.Executor
 
 class WeReqDsl : WeReqCallback {
     private var successHandler: ((String, ByteArray?) -> Unit)? = null
+    private var rawSuccessHandler: ((ByteArray?) -> Unit)? = null
     private var failHandler: ((Int, Int, String) -> Unit)? = null
+    private var deliverExecutor: Executor? = null
 
     fun onSuccess(handler: (json: String, bytes: ByteArray?) -> Unit) { this.successHandler = handler }
+    // 只需要原始回包时使用，不做 JSON 解码
+    fun onSuccessRaw(handler: (bytes: ByteArray?) -> Unit) { this.rawSuccessHandler = handler }
     fun onFail(handler: (errType: Int, errCode: Int, errMsg: String) -> Unit) { this.failHandler = handler }
+    fun deliverOn(executor: Executor) { this.deliverExecutor = executor }
 
-    override fun onSuccess(json: String, bytes: ByteArray?) { successHandler?.invoke(json, bytes) }
+    override val needsJson: Boolean get() = successHandler != null
+    override val executor: Executor? get() = deliverExecutor
+
+    override fun onSuccess(json: String, bytes: ByteArray?) {
+        rawSuccessHandler?.invoke(bytes)
+        successHandler?.invoke(json, bytes)
+    }
     override fun onFail(errType: Int, errCode: Int, errMsg: String) { failHandler?.invoke(errType, errCode, errMsg) }
-}
\ No newline at end of file
+}
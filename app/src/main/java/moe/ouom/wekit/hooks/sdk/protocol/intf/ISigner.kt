@@ -4,6 +4,15 @@ import moe.ouom.wekit.hooks.sdk.protocol.model.SignResult
 import org.json.JSONObject
 
 interface ISigner {
-    fun match(cgiId: Int): Boolean
+    /**
+     * 该签名器负责的 cgiId，注册时据此建立索引
+     */
+    val cgiIds: IntArray
+
+    /**
+     * 注册时调用一次，在这里解析并缓存 sign 需要的反射目标
+     */
+    fun prepare(loader: ClassLoader) {}
+
     fun sign(loader: ClassLoader, json: JSONObject): SignResult
-}
\ No newline at end of file
+}
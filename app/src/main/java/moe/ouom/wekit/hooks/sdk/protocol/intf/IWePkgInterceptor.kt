@@ -1,6 +1,34 @@
 package moe.ouom.wekit.hooks.sdk.protocol.intf
 
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgPacket
+
 interface IWePkgInterceptor {
+    /**
+     * 是否需要处理该请求，所有拦截器都返回 false 时不会序列化请求数据包
+     */
+    fun wantsRequest(uri: String, cgiId: Int): Boolean = true
+
+    /**
+     * 是否需要处理该回包，所有拦截器都返回 false 时不会代理回调，也不会序列化回包
+     */
+    fun wantsResponse(uri: String, cgiId: Int): Boolean = true
+
+    /**
+     * 在拦截链中处理请求，可通过 [WePkgPacket.data] 修改共享的解析结果
+     * 默认转交给字节版本的 onRequest
+     */
+    fun onRequest(packet: WePkgPacket) {
+        onRequest(packet.uri, packet.cgiId, packet.bytes)?.let { packet.bytes = it }
+    }
+
+    /**
+     * 在拦截链中处理回包，可通过 [WePkgPacket.data] 修改共享的解析结果
+     * 默认转交给字节版本的 onResponse
+     */
+    fun onResponse(packet: WePkgPacket) {
+        onResponse(packet.uri, packet.cgiId, packet.bytes)?.let { packet.bytes = it }
+    }
+
     fun onRequest(uri: String, cgiId: Int, reqBytes: ByteArray): ByteArray? = null
     fun onResponse(uri: String, cgiId: Int, respBytes: ByteArray): ByteArray? = null
 }
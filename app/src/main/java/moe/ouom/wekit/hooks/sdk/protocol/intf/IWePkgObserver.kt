@@ -0,0 +1,16 @@
+package moe.ouom.wekit.hooks.sdk.protocol.intf
+
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgEvent
+
+/**
+ * 只读的数据包观察者，在后台线程异步回调，不占用微信的网络线程
+ * 观察者处理不过来时事件会被丢弃，不能用于篡改数据包
+ */
+interface IWePkgObserver {
+    /**
+     * 是否需要该数据包，在网络线程上调用，应尽量轻量
+     */
+    fun wantsPacket(uri: String, cgiId: Int): Boolean = true
+
+    fun onPacket(event: WePkgEvent)
+}
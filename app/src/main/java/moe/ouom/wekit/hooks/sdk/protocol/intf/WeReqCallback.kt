@@ -1,6 +1,20 @@
 package moe.ouom.wekit.hooks.sdk.protocol.intf
 
+import java.util.concurrent.Executor
+
 interface WeReqCallback {
     fun onSuccess(json: String, bytes: ByteArray?)
     fun onFail(errType: Int, errCode: Int, errMsg: String)
-}
\ No newline at end of file
+
+    /**
+     * 为 false 时跳过回包的 JSON 解码，onSuccess 收到的 json 为空字符串
+     */
+    val needsJson: Boolean
+        get() = true
+
+    /**
+     * 回调执行的线程，null 表示主线程
+     */
+    val executor: Executor?
+        get() = null
+}
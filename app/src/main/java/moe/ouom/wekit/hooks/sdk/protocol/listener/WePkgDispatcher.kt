@@ -7,10 +7,46 @@ import moe.ouom.wekit.dexkit.intf.IDexFind
 import moe.ouom.wekit.hooks.core.annotation.HookItem
 import moe.ouom.wekit.hooks.sdk.protocol.WePkgHelper
 import moe.ouom.wekit.hooks.sdk.protocol.WePkgManager
+import moe.ouom.wekit.hooks.sdk.protocol.WePkgStats
+import moe.ouom.wekit.loader.hookimpl.CallbackForwarderClassMaker
 import moe.ouom.wekit.util.common.SyncUtils
 import moe.ouom.wekit.util.log.WeLogger
 import org.luckypray.dexkit.DexKitBridge
 import java.lang.reflect.Proxy
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 按类缓存反射得到的成员，每个类只按名字查找一次，找不到的结果同样缓存
+ */
+private class MemberCache<T : Any>(private val resolve: (Class<*>) -> T?) {
+    private val cache = ConcurrentHashMap<Class<*>, Any>()
+
+    @Suppress("UNCHECKED_CAST")
+    operator fun get(cls: Class<*>): T? {
+        val cached = cache[cls] ?: (resolve(cls) ?: MISSING).also { cache[cls] = it }
+        return if (cached === MISSING) null else cached as T
+    }
+
+    private companion object {
+        val MISSING = Any()
+    }
+}
+
+private fun methodOf(name: String, vararg params: Class<*>) = MemberCache { cls ->
+    try {
+        XposedHelpers.findMethodBestMatch(cls, name, *params)
+    } catch (_: Throwable) {
+        null
+    }
+}
+
+private fun fieldOf(name: String) = MemberCache { cls ->
+    try {
+        XposedHelpers.findField(cls, name)
+    } catch (_: Throwable) {
+        null
+    }
+}
 
 @HookItem(path = "protocol/wepkg_dispatcher", desc = "WePkg 请求/响应数据包拦截与篡改")
 class WePkgDispatcher : ApiHookItem(), IDexFind {
@@ -28,81 +64,68 @@ class WePkgDispatcher : ApiHookItem(), IDexFind {
                 return@postDelayed
             }
 
+            // 回调转发类只生成一次，生成失败时退回动态代理
+            val forwarder = try {
+                CallbackForwarderClassMaker.make(
+                    "moe.ouom.wekit.hooks.sdk.protocol.dyn.WePkgNetEndForwarder", callbackInterface,
+                    "onGYNetEnd", 4, WePkgDispatcher::class.java, "onGYNetEnd"
+                ).constructors.single()
+            } catch (t: Throwable) {
+                WeLogger.e("PkgDispatcher", "生成回调转发类失败，退回动态代理", t)
+                null
+            }
+
             hookBefore(netSceneBaseClass, "dispatch") { param ->
                 val v0Var = param.args[1] ?: return@hookBefore
                 val originalCallback = param.args[2] ?: return@hookBefore
+                val v0Cls = v0Var.javaClass
 
                 // 有时 getUri 返回 null
-                val uri = (XposedHelpers.callMethod(v0Var, "getUri") ?: "null") as String
-                val cgiId = XposedHelpers.callMethod(v0Var, "getType") as Int
-                try {
-                    val reqWrapper = XposedHelpers.callMethod(v0Var, "getReqObj")
-                    val reqPbObj = XposedHelpers.getObjectField(reqWrapper, "a") // m.a
-                    val reqBytes = XposedHelpers.callMethod(reqPbObj, "toByteArray") as ByteArray
+                val uri = (getUri[v0Cls]?.invoke(v0Var) ?: "null") as String
+                val cgiId = getType[v0Cls]?.invoke(v0Var) as? Int ?: return@hookBefore
+                val stats = WePkgStats.enabled
+                val stamp = if (stats) System.nanoTime() else 0L
 
-                    WePkgManager.handleRequestTamper(uri, cgiId, reqBytes)?.let { tampered ->
-                        XposedHelpers.callMethod(reqPbObj, "parseFrom", tampered)
-                        WeLogger.i("PkgDispatcher", "Request Tampered: $uri")
-                    }
-                } catch (_: Throwable) {  }
-
-                if (Proxy.isProxyClass(originalCallback.javaClass)) return@hookBefore
-
-                param.args[2] = Proxy.newProxyInstance(
-                    classLoader,
-                    arrayOf(callbackInterface)
-                ) { _, method, args ->
-                    when (method.name) {
-                        "hashCode" -> return@newProxyInstance originalCallback.hashCode()
-                        "toString" -> return@newProxyInstance originalCallback.toString()
-                        "equals" -> return@newProxyInstance originalCallback.equals(args?.get(0))
-                        "onGYNetEnd" -> {
-                            try {
-                                val respV0 = args!![4] ?: v0Var
-                                val className = respV0.javaClass.name
-
-                                // 处理 Kinda 框架的 WXPCommReqResp
-                                if (className == "com.tencent.kinda.framework.module.impl.WXPCommReqResp") {
-                                    val originalRespBytes = XposedHelpers.callMethod(respV0, "getWXPRespData") as? ByteArray
-                                    if (originalRespBytes != null) {
-                                        WePkgManager.handleResponseTamper(uri, cgiId, originalRespBytes)?.let { tampered ->
-                                            XposedHelpers.callMethod(respV0, "setWXPRespData", tampered)
-                                            WeLogger.i("PkgDispatcher", "Response Tampered (WXP): $uri")
-                                        }
-                                    }
+                // 没有拦截器关心、也不统计时不序列化请求
+                if (stats || WePkgManager.wantsRequest(uri, cgiId)) {
+                    try {
+                        val reqWrapper = getReqObj[v0Cls]?.invoke(v0Var)
+                        val reqPbObj = reqWrapper?.let { wrapperPb[it.javaClass]?.get(it) } // m.a
+                        if (reqPbObj != null) {
+                            val pbCls = reqPbObj.javaClass
+                            val reqBytes = toByteArray[pbCls]?.invoke(reqPbObj) as? ByteArray
+                            if (reqBytes != null) {
+                                if (stats) WePkgStats.recordRequest(uri, cgiId, reqBytes.size)
+                                WePkgManager.handleRequestTamper(uri, cgiId, reqBytes)?.let { tampered ->
+                                    parseFrom[pbCls]?.invoke(reqPbObj, tampered)
+                                    WeLogger.i("PkgDispatcher", "Request Tampered: $uri")
                                 }
-                                // 处理标准混淆的 ICommReqResp 实现
-                                else {
-                                    var respWrapper: Any?
-                                    try {
-                                        respWrapper = XposedHelpers.getObjectField(respV0, "b")
-                                    } catch (_: NoSuchFieldError) {
-                                        respWrapper = XposedHelpers.callMethod(respV0, "getRespObj")
-                                    }
-
-                                    if (respWrapper != null) {
-                                        val respPbObj = try {
-                                            XposedHelpers.getObjectField(respWrapper, "a")
-                                        } catch (_: NoSuchFieldError) {
-                                            null
-                                        }
-
-                                        if (respPbObj != null) {
-                                            val originalRespBytes = XposedHelpers.callMethod(respPbObj, "toByteArray") as ByteArray
-                                            WePkgManager.handleResponseTamper(uri, cgiId, originalRespBytes)?.let { tampered ->
-                                                XposedHelpers.callMethod(respPbObj, "parseFrom", tampered)
-                                                WeLogger.i("PkgDispatcher", "Response Tampered (PB): $uri")
-                                            }
-                                        }
-                                    }
-                                }
-                            } catch (t: Throwable) {
-                                WeLogger.e("PkgDispatcher", "Tamper inner logic fail", t)
                             }
                         }
-                    }
+                    } catch (_: Throwable) {  }
+                }
+
+                val callbackCls = originalCallback.javaClass
+                if (callbackCls === forwarder?.declaringClass || Proxy.isProxyClass(callbackCls)) return@hookBefore
+                // 没有拦截器关心回包、也不统计时不代理回调
+                if (!stats && !WePkgManager.wantsResponse(uri, cgiId)) return@hookBefore
 
-                    return@newProxyInstance method.invoke(originalCallback, *(args ?: emptyArray()))
+                param.args[2] = if (forwarder != null) {
+                    forwarder.newInstance(originalCallback, uri, cgiId, v0Var, stamp)
+                } else {
+                    Proxy.newProxyInstance(
+                        classLoader,
+                        arrayOf(callbackInterface)
+                    ) { _, method, args ->
+                        when (method.name) {
+                            "hashCode" -> return@newProxyInstance originalCallback.hashCode()
+                            "toString" -> return@newProxyInstance originalCallback.toString()
+                            "equals" -> return@newProxyInstance originalCallback.equals(args?.get(0))
+                            "onGYNetEnd" -> onGYNetEnd(uri, cgiId, stamp, args!![4], v0Var)
+                        }
+
+                        return@newProxyInstance method.invoke(originalCallback, *(args ?: emptyArray()))
+                    }
                 }
             }
         }
@@ -176,4 +199,75 @@ class WePkgDispatcher : ApiHookItem(), IDexFind {
 
         return descriptors
     }
-}
\ No newline at end of file
+
+    companion object {
+        // 热路径上用到的反射成员，按实际类缓存
+        private val getUri = methodOf("getUri")
+        private val getType = methodOf("getType")
+        private val getReqObj = methodOf("getReqObj")
+        private val wrapperPb = fieldOf("a")
+        private val toByteArray = methodOf("toByteArray")
+        private val parseFrom = methodOf("parseFrom", ByteArray::class.java)
+        private val getWXPRespData = methodOf("getWXPRespData")
+        private val setWXPRespData = methodOf("setWXPRespData", ByteArray::class.java)
+
+        // 回包包装对象：优先取字段 b，没有该字段的实现退回 getRespObj()
+        private val respObjGetter = MemberCache<(Any) -> Any?> { cls ->
+            val field = try {
+                XposedHelpers.findField(cls, "b")
+            } catch (_: Throwable) {
+                null
+            }
+            if (field != null) {
+                { obj: Any -> field.get(obj) }
+            } else {
+                val method = try {
+                    XposedHelpers.findMethodBestMatch(cls, "getRespObj")
+                } catch (_: Throwable) {
+                    null
+                }
+                method?.let { m -> { obj: Any -> m.invoke(obj) } }
+            }
+        }
+
+        /**
+         * 回调转发类在 onGYNetEnd 转发给原回调之前调用，入参为 onGYNetEnd 的第 5 个参数
+         * stamp 为 dispatch 时的 nanoTime，未开启统计时为 0
+         */
+        @JvmStatic
+        fun onGYNetEnd(uri: String, cgiId: Int, stamp: Long, respV0: Any?, reqResp: Any) {
+            if (stamp != 0L) WePkgStats.recordLatency(uri, cgiId, System.nanoTime() - stamp)
+            try {
+                handleResponse(uri, cgiId, respV0 ?: reqResp)
+            } catch (t: Throwable) {
+                WeLogger.e("PkgDispatcher", "Tamper inner logic fail", t)
+            }
+        }
+
+        private fun handleResponse(uri: String, cgiId: Int, respV0: Any) {
+            val respCls = respV0.javaClass
+
+            // 处理 Kinda 框架的 WXPCommReqResp
+            if (respCls.name == "com.tencent.kinda.framework.module.impl.WXPCommReqResp") {
+                val originalRespBytes = getWXPRespData[respCls]?.invoke(respV0) as? ByteArray ?: return
+                if (WePkgStats.enabled) WePkgStats.recordResponse(uri, cgiId, originalRespBytes.size)
+                WePkgManager.handleResponseTamper(uri, cgiId, originalRespBytes)?.let { tampered ->
+                    setWXPRespData[respCls]?.invoke(respV0, tampered)
+                    WeLogger.i("PkgDispatcher", "Response Tampered (WXP): $uri")
+                }
+                return
+            }
+
+            // 处理标准混淆的 ICommReqResp 实现
+            val respWrapper = respObjGetter[respCls]?.invoke(respV0) ?: return
+            val respPbObj = wrapperPb[respWrapper.javaClass]?.get(respWrapper) ?: return
+            val pbCls = respPbObj.javaClass
+            val originalRespBytes = toByteArray[pbCls]?.invoke(respPbObj) as? ByteArray ?: return
+            if (WePkgStats.enabled) WePkgStats.recordResponse(uri, cgiId, originalRespBytes.size)
+            WePkgManager.handleResponseTamper(uri, cgiId, originalRespBytes)?.let { tampered ->
+                parseFrom[pbCls]?.invoke(respPbObj, tampered)
+                WeLogger.i("PkgDispatcher", "Response Tampered (PB): $uri")
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package moe.ouom.wekit.hooks.sdk.protocol.model
+
+/**
+ * 只读 CGI 的回包缓存策略
+ * ttlMs 内相同请求直接返回缓存的回包；dedupInFlight 为 true 时并发的相同请求共享一次网络往返
+ */
+data class CgiCachePolicy(
+    val ttlMs: Long,
+    val dedupInFlight: Boolean = true
+)
@@ -0,0 +1,12 @@
+package moe.ouom.wekit.hooks.sdk.protocol.model
+
+/**
+ * 一次通用发包请求，字段与 WePkgHelper.sendCgi 的参数一一对应
+ */
+data class CgiRequest(
+    val uri: String,
+    val cgiId: Int,
+    val funcId: Int,
+    val routeId: Int,
+    val jsonPayload: String
+)
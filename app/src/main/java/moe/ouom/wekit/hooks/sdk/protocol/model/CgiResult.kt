@@ -0,0 +1,29 @@
+package moe.ouom.wekit.hooks.sdk.protocol.model
+
+import moe.ouom.wekit.hooks.sdk.protocol.NativeSchema
+import moe.ouom.wekit.util.WeProtoJsonCodec
+
+/**
+ * 一次发包的结果，errType 与 errCode 均为 0 时表示成功
+ * json 在首次访问时才从 bytes 解码，只关心原始回包的调用方不承担解码开销
+ */
+class CgiResult(
+    val request: CgiRequest,
+    val bytes: ByteArray?,
+    val errType: Int = 0,
+    val errCode: Int = 0,
+    val errMsg: String = ""
+) {
+    val isSuccess: Boolean
+        get() = errType == 0 && errCode == 0
+
+    val json: String? by lazy {
+        if (!isSuccess) null
+        else bytes?.let { WeProtoJsonCodec.toJson(it, NativeSchema.response(request.cgiId)) } ?: "{}"
+    }
+
+    companion object {
+        fun fail(request: CgiRequest, errType: Int, errCode: Int, errMsg: String) =
+            CgiResult(request, null, errType, errCode, errMsg)
+    }
+}
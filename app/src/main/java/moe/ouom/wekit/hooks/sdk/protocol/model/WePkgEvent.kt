@@ -0,0 +1,15 @@
+package moe.ouom.wekit.hooks.sdk.protocol.model
+
+/**
+ * 交给观察者的数据包快照
+ * bytes 为拦截链处理后实际收发的数据，发布后不会再被修改，观察者也不应修改它
+ * stack 仅在开启详细日志时采集（请求方向），格式化放到观察者线程进行
+ */
+class WePkgEvent(
+    val isRequest: Boolean,
+    val uri: String,
+    val cgiId: Int,
+    val bytes: ByteArray,
+    val timestamp: Long,
+    val stack: Array<StackTraceElement>? = null
+)
@@ -0,0 +1,63 @@
+package moe.ouom.wekit.hooks.sdk.protocol.model
+
+import moe.ouom.wekit.util.WeProtoData
+import moe.ouom.wekit.util.WeProtoSchema
+
+/**
+ * 拦截链中流转的数据包
+ * 所有拦截器共享同一份解析结果：首次调用 [data] 时解析一次，各拦截器直接修改它，
+ * 链路结束时只在确有修改的情况下序列化一次
+ */
+class WePkgPacket(
+    val uri: String,
+    val cgiId: Int,
+    bytes: ByteArray,
+    private val schema: WeProtoSchema? = null
+) {
+    private var raw = bytes
+    private var parsed: WeProtoData? = null
+    private var parsedModCount = 0
+    private var replaced = false
+
+    /**
+     * 当前数据包字节，读取时会先落地此前对 [data] 的修改；赋值会替换整个数据包
+     */
+    var bytes: ByteArray
+        get() {
+            sync()
+            return raw
+        }
+        set(value) {
+            raw = value
+            parsed = null
+            replaced = true
+        }
+
+    /**
+     * 共享的解析结果，解析失败时抛出异常
+     */
+    fun data(): WeProtoData {
+        parsed?.let { return it }
+        val d = WeProtoData()
+        d.fromBytesLazy(raw, schema)
+        parsed = d
+        parsedModCount = d.modCount
+        return d
+    }
+
+    private fun sync() {
+        val d = parsed ?: return
+        if (d.modCount == parsedModCount) return
+        raw = d.toPacketBytes()
+        parsedModCount = d.modCount
+        replaced = true
+    }
+
+    /**
+     * 拦截链结束后的结果，未被修改时返回 null
+     */
+    fun result(): ByteArray? {
+        sync()
+        return if (replaced) raw else null
+    }
+}
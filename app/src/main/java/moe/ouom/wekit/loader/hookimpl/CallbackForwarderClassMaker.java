@@ -0,0 +1,310 @@
+package moe.ouom.wekit.loader.hookimpl;
+
+import androidx.annotation.NonNull;
+
+import org.jf.dexlib2.Opcode;
+import org.jf.dexlib2.Opcodes;
+import org.jf.dexlib2.iface.Annotation;
+import org.jf.dexlib2.iface.ClassDef;
+import org.jf.dexlib2.iface.instruction.Instruction;
+import org.jf.dexlib2.iface.value.EncodedValue;
+import org.jf.dexlib2.immutable.ImmutableClassDef;
+import org.jf.dexlib2.immutable.ImmutableDexFile;
+import org.jf.dexlib2.immutable.ImmutableField;
+import org.jf.dexlib2.immutable.ImmutableMethod;
+import org.jf.dexlib2.immutable.ImmutableMethodImplementation;
+import org.jf.dexlib2.immutable.ImmutableMethodParameter;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction10x;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction11n;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction11x;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction22c;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction22t;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction22x;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction35c;
+import org.jf.dexlib2.immutable.instruction.ImmutableInstruction3rc;
+import org.jf.dexlib2.immutable.reference.ImmutableFieldReference;
+import org.jf.dexlib2.immutable.reference.ImmutableMethodReference;
+import org.jf.dexlib2.writer.io.MemoryDataStore;
+import org.jf.dexlib2.writer.pool.DexPool;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import moe.ouom.wekit.dexkit.DexMethodDescriptor;
+import moe.ouom.wekit.loader.dyn.MemoryDexLoader;
+
+/**
+ * 为宿主的回调接口生成固定的转发类，代替每次请求都走一遍 java.lang.reflect.Proxy
+ * <p>
+ * 生成的类实现给定接口，构造参数为 (接口 target, String uri, int cgiId, Object reqResp, long stamp)，
+ * 全部接口方法直接 invoke-interface 转发给 target，hashCode / equals / toString 同样委托给 target，
+ * 与 Proxy 实现的语义保持一致；
+ * 名为 interceptName 的方法在转发前先调用静态方法
+ * {@code hookOwner.hookName(String uri, int cgiId, long stamp, Object arg, Object reqResp)}，arg 为该方法第 argIndex 个参数
+ */
+public class CallbackForwarderClassMaker {
+
+    private static final int ACC_CONSTRUCTOR = 0x00010000;
+
+    // 生成方法内使用的局部寄存器数：v0 uri、v1 cgiId、v2-v3 stamp、v4 arg、v5 reqResp
+    private static final int LOCALS = 6;
+
+    private CallbackForwarderClassMaker() {
+    }
+
+    /**
+     * 生成并加载转发类
+     *
+     * @param className     生成类的全限定名
+     * @param iface         要实现的回调接口
+     * @param interceptName 需要在转发前插入 hook 调用的方法名
+     * @param argIndex      传给 hook 的参数下标，该参数必须是引用类型
+     * @param hookOwner     hook 静态方法所在的类
+     * @param hookName      hook 静态方法名
+     */
+    @NonNull
+    public static Class<?> make(@NonNull String className, @NonNull Class<?> iface, @NonNull String interceptName,
+                                int argIndex, @NonNull Class<?> hookOwner, @NonNull String hookName) {
+        byte[] dex = generate(className, iface, interceptName, argIndex, hookOwner, hookName);
+        ClassLoader hostLoader = Objects.requireNonNull(iface.getClassLoader(), "iface loader");
+        ClassLoader moduleLoader = Objects.requireNonNull(hookOwner.getClassLoader(), "hookOwner loader");
+        ClassLoader loader = MemoryDexLoader.createClassLoaderWithDex(dex, new JoinClassLoader(moduleLoader, hostLoader));
+        try {
+            return Class.forName(className, true, loader);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to load forwarder class " + className, e);
+        }
+    }
+
+    @NonNull
+    public static byte[] generate(@NonNull String className, @NonNull Class<?> iface, @NonNull String interceptName,
+                                  int argIndex, @NonNull Class<?> hookOwner, @NonNull String hookName) {
+        if (!iface.isInterface()) {
+            throw new IllegalArgumentException(iface.getName() + " is not an interface");
+        }
+        String typeSelf = "L" + className.replace('.', '/') + ";";
+        String typeIface = DexMethodDescriptor.getTypeSig(iface);
+        String typeHookOwner = DexMethodDescriptor.getTypeSig(hookOwner);
+
+        ImmutableFieldReference fTarget = new ImmutableFieldReference(typeSelf, "target", typeIface);
+        ImmutableFieldReference fUri = new ImmutableFieldReference(typeSelf, "uri", "Ljava/lang/String;");
+        ImmutableFieldReference fCgiId = new ImmutableFieldReference(typeSelf, "cgiId", "I");
+        ImmutableFieldReference fReqResp = new ImmutableFieldReference(typeSelf, "reqResp", "Ljava/lang/Object;");
+        ImmutableFieldReference fStamp = new ImmutableFieldReference(typeSelf, "stamp", "J");
+
+        List<ImmutableField> fields = new ArrayList<>();
+        for (ImmutableFieldReference ref : List.of(fTarget, fUri, fCgiId, fReqResp, fStamp)) {
+            fields.add(new ImmutableField(typeSelf, ref.getName(), ref.getType(),
+                    Modifier.PUBLIC | Modifier.FINAL, (EncodedValue) null, null, null));
+        }
+
+        List<ImmutableMethod> methods = new ArrayList<>();
+        {
+            // <init>(target, uri, cgiId, reqResp, stamp)，无局部寄存器，p0..p6 即 v0..v6
+            List<Instruction> ins = new ArrayList<>();
+            ins.add(new ImmutableInstruction35c(Opcode.INVOKE_DIRECT, 1, 0, 0, 0, 0, 0,
+                    new ImmutableMethodReference("Ljava/lang/Object;", "<init>", List.of(), "V")));
+            ins.add(new ImmutableInstruction22c(Opcode.IPUT_OBJECT, 1, 0, fTarget));
+            ins.add(new ImmutableInstruction22c(Opcode.IPUT_OBJECT, 2, 0, fUri));
+            ins.add(new ImmutableInstruction22c(Opcode.IPUT, 3, 0, fCgiId));
+            ins.add(new ImmutableInstruction22c(Opcode.IPUT_OBJECT, 4, 0, fReqResp));
+            ins.add(new ImmutableInstruction22c(Opcode.IPUT_WIDE, 5, 0, fStamp));
+            ins.add(new ImmutableInstruction10x(Opcode.RETURN_VOID));
+            methods.add(new ImmutableMethod(typeSelf, "<init>", List.of(
+                    param(typeIface, "target"),
+                    param("Ljava/lang/String;", "uri"),
+                    param("I", "cgiId"),
+                    param("Ljava/lang/Object;", "reqResp"),
+                    param("J", "stamp")
+            ), "V", Modifier.PUBLIC | ACC_CONSTRUCTOR, null, null,
+                    new ImmutableMethodImplementation(7, ins, null, null)));
+        }
+
+        boolean intercepted = false;
+        for (Method m : iface.getMethods()) {
+            if (!Modifier.isAbstract(m.getModifiers()) || isObjectMethod(m)) continue;
+            boolean hook = m.getName().equals(interceptName);
+            methods.add(forwardMethod(typeSelf, m, fTarget, hook ? new HookCall(
+                    fUri, fCgiId, fReqResp, fStamp, argIndex, typeHookOwner, hookName) : null));
+            intercepted |= hook;
+        }
+        if (!intercepted) {
+            throw new IllegalArgumentException("Method " + interceptName + " not found in " + iface.getName());
+        }
+        methods.addAll(objectMethods(typeSelf, fTarget));
+
+        ImmutableClassDef classDef = new ImmutableClassDef(typeSelf, Modifier.PUBLIC | Modifier.FINAL,
+                "Ljava/lang/Object;", Collections.singletonList(typeIface),
+                "CallbackForwarderClassMaker.dexlib2", null, fields, methods);
+        ImmutableDexFile dexFile = new ImmutableDexFile(Opcodes.forDexVersion(35), Collections.singletonList(classDef));
+
+        MemoryDataStore memoryDataStore = new MemoryDataStore();
+        DexPool dexPool = new DexPool(dexFile.getOpcodes());
+        for (ClassDef def : dexFile.getClasses()) {
+            dexPool.internClass(def);
+        }
+        try {
+            dexPool.writeTo(memoryDataStore);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return memoryDataStore.getData();
+    }
+
+    private static final class HookCall {
+        final ImmutableFieldReference uri;
+        final ImmutableFieldReference cgiId;
+        final ImmutableFieldReference reqResp;
+        final ImmutableFieldReference stamp;
+        final int argIndex;
+        final String owner;
+        final String name;
+
+        HookCall(ImmutableFieldReference uri, ImmutableFieldReference cgiId, ImmutableFieldReference reqResp,
+                 ImmutableFieldReference stamp, int argIndex, String owner, String name) {
+            this.uri = uri;
+            this.cgiId = cgiId;
+            this.reqResp = reqResp;
+            this.stamp = stamp;
+            this.argIndex = argIndex;
+            this.owner = owner;
+            this.name = name;
+        }
+    }
+
+    private static ImmutableMethod forwardMethod(String typeSelf, Method m, ImmutableFieldReference fTarget, HookCall hook) {
+        Class<?>[] paramTypes = m.getParameterTypes();
+        List<ImmutableMethodParameter> params = new ArrayList<>();
+        List<String> paramSigs = new ArrayList<>();
+        // 参数寄存器：this 在 v[LOCALS]，其后依次是各参数，long / double 占两个
+        int[] paramRegs = new int[paramTypes.length];
+        int reg = LOCALS + 1;
+        for (int i = 0; i < paramTypes.length; i++) {
+            String sig = DexMethodDescriptor.getTypeSig(paramTypes[i]);
+            paramSigs.add(sig);
+            params.add(param(sig, null));
+            paramRegs[i] = reg;
+            reg += isWide(paramTypes[i]) ? 2 : 1;
+        }
+        int insSize = reg - LOCALS;
+        String returnSig = DexMethodDescriptor.getTypeSig(m.getReturnType());
+        final int self = LOCALS;
+
+        List<Instruction> ins = new ArrayList<>();
+        if (hook != null) {
+            if (hook.argIndex < 0 || hook.argIndex >= paramTypes.length || paramTypes[hook.argIndex].isPrimitive()) {
+                throw new IllegalArgumentException("argIndex " + hook.argIndex + " is not a reference parameter of " + m);
+            }
+            ins.add(new ImmutableInstruction22c(Opcode.IGET_OBJECT, 0, self, hook.uri));
+            ins.add(new ImmutableInstruction22c(Opcode.IGET, 1, self, hook.cgiId));
+            ins.add(new ImmutableInstruction22c(Opcode.IGET_WIDE, 2, self, hook.stamp));
+            ins.add(new ImmutableInstruction22x(Opcode.MOVE_OBJECT_FROM16, 4, paramRegs[hook.argIndex]));
+            ins.add(new ImmutableInstruction22c(Opcode.IGET_OBJECT, 5, self, hook.reqResp));
+            ins.add(new ImmutableInstruction3rc(Opcode.INVOKE_STATIC_RANGE, 0, LOCALS,
+                    new ImmutableMethodReference(hook.owner, hook.name, List.of(
+                            "Ljava/lang/String;", "I", "J", "Ljava/lang/Object;", "Ljava/lang/Object;"), "V")));
+        }
+        // this 已不再需要，直接用它装 target，与后续参数寄存器连成 invoke-interface/range 的区间
+        ins.add(new ImmutableInstruction22c(Opcode.IGET_OBJECT, self, self, fTarget));
+        ins.add(new ImmutableInstruction3rc(Opcode.INVOKE_INTERFACE_RANGE, self, insSize,
+                new ImmutableMethodReference(DexMethodDescriptor.getTypeSig(m.getDeclaringClass()),
+                        m.getName(), paramSigs, returnSig)));
+        Class<?> rt = m.getReturnType();
+        if (rt == void.class) {
+            ins.add(new ImmutableInstruction10x(Opcode.RETURN_VOID));
+        } else if (isWide(rt)) {
+            ins.add(new ImmutableInstruction11x(Opcode.MOVE_RESULT_WIDE, 0));
+            ins.add(new ImmutableInstruction11x(Opcode.RETURN_WIDE, 0));
+        } else if (rt.isPrimitive()) {
+            ins.add(new ImmutableInstruction11x(Opcode.MOVE_RESULT, 0));
+            ins.add(new ImmutableInstruction11x(Opcode.RETURN, 0));
+        } else {
+            ins.add(new ImmutableInstruction11x(Opcode.MOVE_RESULT_OBJECT, 0));
+            ins.add(new ImmutableInstruction11x(Opcode.RETURN_OBJECT, 0));
+        }
+        return new ImmutableMethod(typeSelf, m.getName(), params, returnSig, Modifier.PUBLIC, null, null,
+                new ImmutableMethodImplementation(reg, ins, null, null));
+    }
+
+    private static boolean isObjectMethod(Method m) {
+        try {
+            Object.class.getMethod(m.getName(), m.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * hashCode / equals / toString 委托给 target，宿主比较回调对象时与原回调等价
+     * 寄存器：v0 临时，v1 this，equals 的参数在 v2
+     */
+    private static List<ImmutableMethod> objectMethods(String typeSelf, ImmutableFieldReference fTarget) {
+        final String typeObject = "Ljava/lang/Object;";
+        List<ImmutableMethod> methods = new ArrayList<>();
+
+        List<Instruction> hashCode = List.of(
+                new ImmutableInstruction22c(Opcode.IGET_OBJECT, 0, 1, fTarget),
+                new ImmutableInstruction35c(Opcode.INVOKE_VIRTUAL, 1, 0, 0, 0, 0, 0,
+                        new ImmutableMethodReference(typeObject, "hashCode", List.of(), "I")),
+                new ImmutableInstruction11x(Opcode.MOVE_RESULT, 0),
+                new ImmutableInstruction11x(Opcode.RETURN, 0));
+        methods.add(new ImmutableMethod(typeSelf, "hashCode", List.of(), "I", Modifier.PUBLIC, null, null,
+                new ImmutableMethodImplementation(2, hashCode, null, null)));
+
+        List<Instruction> toString = List.of(
+                new ImmutableInstruction22c(Opcode.IGET_OBJECT, 0, 1, fTarget),
+                new ImmutableInstruction35c(Opcode.INVOKE_VIRTUAL, 1, 0, 0, 0, 0, 0,
+                        new ImmutableMethodReference(typeObject, "toString", List.of(), "Ljava/lang/String;")),
+                new ImmutableInstruction11x(Opcode.MOVE_RESULT_OBJECT, 0),
+                new ImmutableInstruction11x(Opcode.RETURN_OBJECT, 0));
+        methods.add(new ImmutableMethod(typeSelf, "toString", List.of(), "Ljava/lang/String;", Modifier.PUBLIC,
+                null, null, new ImmutableMethodImplementation(2, toString, null, null)));
+
+        // 与自身比较时直接返回 true，其余交给 target.equals
+        List<Instruction> equals = List.of(
+                new ImmutableInstruction22t(Opcode.IF_NE, 1, 2, 4),
+                new ImmutableInstruction11n(Opcode.CONST_4, 0, 1),
+                new ImmutableInstruction11x(Opcode.RETURN, 0),
+                new ImmutableInstruction22c(Opcode.IGET_OBJECT, 0, 1, fTarget),
+                new ImmutableInstruction35c(Opcode.INVOKE_VIRTUAL, 2, 0, 2, 0, 0, 0,
+                        new ImmutableMethodReference(typeObject, "equals", List.of(typeObject), "Z")),
+                new ImmutableInstruction11x(Opcode.MOVE_RESULT, 0),
+                new ImmutableInstruction11x(Opcode.RETURN, 0));
+        methods.add(new ImmutableMethod(typeSelf, "equals", List.of(param(typeObject, "other")), "Z",
+                Modifier.PUBLIC, null, null, new ImmutableMethodImplementation(3, equals, null, null)));
+
+        return methods;
+    }
+
+    private static ImmutableMethodParameter param(String type, String name) {
+        return new ImmutableMethodParameter(type, (Set<? extends Annotation>) null, name);
+    }
+
+    private static boolean isWide(Class<?> type) {
+        return type == long.class || type == double.class;
+    }
+
+    /**
+     * 生成类同时引用宿主接口与模块内的 hook 类：先按模块 ClassLoader 查找，找不到再交给宿主
+     */
+    private static final class JoinClassLoader extends ClassLoader {
+        private final ClassLoader host;
+
+        JoinClassLoader(ClassLoader module, ClassLoader host) {
+            super(module);
+            this.host = host;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return host.loadClass(name);
+        }
+    }
+}
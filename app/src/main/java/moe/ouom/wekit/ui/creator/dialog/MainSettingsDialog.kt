@@ -1,9 +1,12 @@
 package moe.ouom.wekit.ui.creator.dialog
 
 import android.content.Context
+import com.afollestad.materialdialogs.MaterialDialog
 import moe.ouom.wekit.BuildConfig
 import moe.ouom.wekit.constants.Constants
+import moe.ouom.wekit.ui.CommonContextWrapper
 import moe.ouom.wekit.util.common.Utils.jumpUrl
+import moe.ouom.wekit.util.log.StackSampler
 import java.text.SimpleDateFormat
 import java.util.Date
 import java.util.Locale
@@ -17,6 +20,14 @@ class MainSettingsDialog(context: Context) : BaseRikkaDialog(context, "WeKit") {
         -10000 to "低优先级"
     )
 
+    // 调用栈采样率 (每 N 次采集一次 -> 显示文本)
+    private val stackSampleMap = mapOf(
+        1 to "每次采集",
+        10 to "每 10 次采集一次",
+        100 to "每 100 次采集一次",
+        0 to "不采集"
+    )
+
     override fun initPreferences() {
         addCategory("设定")
         val categories = listOf(
@@ -68,6 +79,48 @@ class MainSettingsDialog(context: Context) : BaseRikkaDialog(context, "WeKit") {
             useFullKey = true
         )
 
+        val stackRateView = addSelectPreference(
+            key = Constants.PrekStackSampleRate,
+            title = "调用栈采样",
+            summary = "详细日志采集调用栈的频率",
+            options = stackSampleMap,
+            defaultValue = StackSampler.DEFAULT_RATE,
+            iconName = "ic_debug",
+            useFullKey = true
+        )
+
+        val stackOverridesView = addEditTextPreference(
+            key = Constants.PrekStackSampleOverrides,
+            title = "单独采样率",
+            summary = "按 cgiId 或表名单独设置，每 N 次采集一次，0 为不采集",
+            hint = "例如: 522=1,message=0",
+            iconName = "ic_debug",
+            useFullKey = true
+        )
+
+        addPreference(
+            title = "查看调用栈",
+            summary = "按出现次数列出已采集的调用点",
+            iconName = "ic_debug",
+            onClick = { anchor, summaryView ->
+                MaterialDialog(CommonContextWrapper.createAppCompatContext(context)).show {
+                    title(text = "调用栈")
+                    message(text = StackSampler.dump().ifEmpty { "暂无数据" })
+                    positiveButton(text = "关闭")
+                    negativeButton(text = "清空") { StackSampler.clear() }
+                }
+            }
+        )
+
+        listOf(stackRateView, stackOverridesView).forEach {
+            setDependency(
+                dependentView = it,
+                dependencyKey = Constants.PrekVerboseLog,
+                enableWhen = true,
+                useFullKey = true
+            )
+        }
+
         // ==========================================
         // 兼容 (Compatibility)
         // ==========================================
@@ -9,7 +9,6 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -40,19 +39,49 @@ public class WeProtoData {
     }
 
     private static final class LenValue {
-        byte[] raw;
+        // 惰性模式下 buf 可能直接引用原始数据包，仅通过 off/len 描述本字段所在的切片
+        byte[] buf;
+        int off;
+        int len;
         String utf8;
         WeProtoData subMessage;
         LenView view;
+        // 来自 WeProtoSchema 的类型提示，为 null 时走启发式判断
+        WeProtoSchema.Entry hint;
 
         LenValue(byte[] raw) {
-            this.raw = raw != null ? raw : new byte[0];
+            setRaw(raw);
             this.view = LenView.AUTO;
         }
+
+        LenValue(byte[] buf, int off, int len) {
+            this.buf = buf;
+            this.off = off;
+            this.len = len;
+            this.view = LenView.AUTO;
+        }
+
+        void setRaw(byte[] raw) {
+            this.buf = raw != null ? raw : new byte[0];
+            this.off = 0;
+            this.len = this.buf.length;
+        }
     }
 
     private final List<Field> fields = new ArrayList<>();
     private byte[] packetPrefix = new byte[0];
+    private boolean lazy;
+    private WeProtoSchema schema;
+
+    // 解析来源切片；dirty 为 false 时本消息的编码与该切片完全一致，序列化时直接拷贝
+    private byte[] source;
+    private int sourceOff;
+    private int sourceLen;
+    private boolean dirty = true;
+    // 最近一次 computeSize 的结果，供 writeTo 写长度前缀
+    private int cachedSize;
+    // 每次通过公开方法修改内容时递增，供调用方判断解析后是否被改动过
+    private int modCount;
 
     public static boolean hasPacketPrefix(byte[] b) {
         return b != null && b.length >= 4 && (b[0] & 0xFF) == 0;
@@ -68,6 +97,8 @@ public class WeProtoData {
     public void clear() {
         fields.clear();
         packetPrefix = new byte[0];
+        source = null;
+        markDirty();
     }
 
     public byte[] getPacketPrefix() {
@@ -76,32 +107,106 @@ public class WeProtoData {
 
     public void setPacketPrefix(byte[] prefix) {
         this.packetPrefix = prefix != null ? Arrays.copyOf(prefix, prefix.length) : new byte[0];
+        modCount++;
+    }
+
+    /**
+     * 内容修改计数，解析后记录一次，之后不相等即说明数据已被修改、需要重新序列化
+     */
+    public int getModCount() {
+        return modCount;
+    }
+
+    private void markDirty() {
+        dirty = true;
+        modCount++;
     }
 
     public void fromBytes(byte[] b) throws IOException {
+        fromBytes(b, null);
+    }
+
+    /**
+     * 按 schema 给出的字段类型解析数据包，未声明的字段仍使用启发式判断
+     */
+    public void fromBytes(byte[] b, WeProtoSchema schema) throws IOException {
         clear();
+        lazy = false;
+        this.schema = schema;
         if (b == null) return;
 
-        byte[] body = b;
         if (hasPacketPrefix(b)) {
             packetPrefix = Arrays.copyOfRange(b, 0, 4);
-            body = Arrays.copyOfRange(b, 4, b.length);
+            parseMessageBytes(b, 4, b.length - 4, true);
+        } else {
+            parseMessageBytes(b, 0, b.length, true);
         }
-        parseMessageBytes(body, true);
     }
 
     public void fromMessageBytes(byte[] b) throws IOException {
         clear();
+        lazy = false;
+        schema = null;
         packetPrefix = new byte[0];
-        parseMessageBytes(b, true);
+        if (b == null) return;
+        parseMessageBytes(b, 0, b.length, true);
+    }
+
+    /**
+     * 惰性解析数据包
+     * 长度分隔字段只记录其在原始数组中的 (offset, length)，子消息与 UTF-8 视图
+     * 推迟到 toJSON / applyViewJSON / replace* 真正访问该字段时才解码
+     * 注意：解析结果与传入数组共享内存，在本对象使用期间调用方不得修改该数组
+     */
+    public void fromBytesLazy(byte[] b) throws IOException {
+        fromBytesLazy(b, null);
+    }
+
+    /**
+     * 惰性解析数据包，并按 schema 给出的字段类型解码，语义同 {@link #fromBytesLazy(byte[])}
+     */
+    public void fromBytesLazy(byte[] b, WeProtoSchema schema) throws IOException {
+        clear();
+        lazy = true;
+        this.schema = schema;
+        if (b == null) return;
+
+        if (hasPacketPrefix(b)) {
+            packetPrefix = Arrays.copyOfRange(b, 0, 4);
+            parseMessageBytes(b, 4, b.length - 4, false);
+        } else {
+            parseMessageBytes(b, 0, b.length, false);
+        }
     }
 
-    private void parseMessageBytes(byte[] b, boolean analyzeLen) throws IOException {
+    /**
+     * 惰性解析不带包头的消息体，语义同 {@link #fromBytesLazy(byte[])}
+     */
+    public void fromMessageBytesLazy(byte[] b) throws IOException {
+        clear();
+        lazy = true;
+        schema = null;
+        packetPrefix = new byte[0];
         if (b == null) return;
+        parseMessageBytes(b, 0, b.length, false);
+    }
 
-        CodedInputStream in = CodedInputStream.newInstance(b);
+    /**
+     * 解析 b[off, off + len) 中的字段
+     * 惰性模式下长度分隔字段不拷贝，仅保存切片
+     *
+     * 输入为规范编码时记录来源切片，后续未修改的情况下序列化可直接拷贝
+     *
+     * @return 输入是否为规范编码（重新序列化后与原字节完全一致）
+     */
+    private boolean parseMessageBytes(byte[] b, int off, int len, boolean analyzeLen) throws IOException {
+        if (b == null) return true;
+
+        boolean canonical = true;
+        CodedInputStream in = CodedInputStream.newInstance(b, off, len);
         while (!in.isAtEnd()) {
             final int tag;
+            int start = in.getTotalBytesRead();
             try {
                 tag = in.readTag();
             } catch (InvalidProtocolBufferException e) {
@@ -109,6 +214,9 @@ public class WeProtoData {
             }
 
             if (tag == 0) break;
+            if (in.getTotalBytesRead() - start != CodedOutputStream.computeUInt32SizeNoTag(tag)) {
+                canonical = false;
+            }
 
             int fieldNumber = tag >>> 3;
             int wireType = tag & 7;
@@ -119,7 +227,11 @@ public class WeProtoData {
 
             switch (wireType) {
                 case 0: {
+                    start = in.getTotalBytesRead();
                     long v = in.readInt64();
+                    if (in.getTotalBytesRead() - start != CodedOutputStream.computeUInt64SizeNoTag(v)) {
+                        canonical = false;
+                    }
                     fields.add(new Field(fieldNumber, wireType, v));
                     break;
                 }
@@ -129,9 +241,21 @@ public class WeProtoData {
                     break;
                 }
                 case 2: {
-                    byte[] subBytes = in.readByteArray();
-                    LenValue lv = new LenValue(subBytes);
-                    if (analyzeLen) analyzeLenValue(lv);
+                    start = in.getTotalBytesRead();
+                    int size = in.readRawVarint32();
+                    if (in.getTotalBytesRead() - start != CodedOutputStream.computeUInt32SizeNoTag(size)) {
+                        canonical = false;
+                    }
+                    LenValue lv;
+                    if (lazy) {
+                        int dataOff = off + in.getTotalBytesRead();
+                        in.skipRawBytes(size);
+                        lv = new LenValue(b, dataOff, size);
+                    } else {
+                        lv = new LenValue(in.readRawBytes(size));
+                    }
+                    if (schema != null) lv.hint = schema.get(fieldNumber);
+                    if (!lazy && analyzeLen) analyzeLenValue(lv);
                     fields.add(new Field(fieldNumber, wireType, lv));
                     break;
                 }
@@ -144,12 +268,25 @@ public class WeProtoData {
                     break;
             }
         }
+        canonical = canonical && in.getTotalBytesRead() == len;
+        if (canonical) {
+            source = b;
+            sourceOff = off;
+            sourceLen = len;
+        }
+        dirty = !canonical;
+        return canonical;
     }
 
     private static void analyzeLenValue(LenValue lv) {
         if (lv == null) return;
 
-        WeProtoData sub = tryParseSubMessageStrong(lv.raw);
+        if (lv.hint != null) {
+            analyzeLenValueByHint(lv, false);
+            return;
+        }
+
+        WeProtoData sub = tryParseSubMessageStrong(lv.buf, lv.off, lv.len, false);
         if (sub != null) {
             lv.subMessage = sub;
             lv.utf8 = null;
@@ -157,7 +294,7 @@ public class WeProtoData {
             return;
         }
 
-        String s = tryDecodeUtf8Roundtrip(lv.raw);
+        String s = tryDecodeUtf8Roundtrip(lv.buf, lv.off, lv.len);
         if (s != null) {
             lv.utf8 = s;
             lv.subMessage = null;
@@ -170,33 +307,89 @@ public class WeProtoData {
         lv.view = LenView.HEX;
     }
 
-    private static String tryDecodeUtf8Roundtrip(byte[] b) {
+    /**
+     * 按类型提示确定视图，只做一次对应类型的解码
+     * 子消息提示解析失败时退回启发式判断
+     */
+    private static void analyzeLenValueByHint(LenValue lv, boolean lazy) {
+        switch (lv.hint.kind) {
+            case MESSAGE: {
+                WeProtoData sub = parseSubMessageWithSchema(lv.buf, lv.off, lv.len, lv.hint.message, lazy);
+                if (sub != null) {
+                    lv.subMessage = sub;
+                    lv.utf8 = null;
+                    lv.view = LenView.SUB;
+                    return;
+                }
+                lv.hint = null;
+                if (!lazy) analyzeLenValue(lv);
+                return;
+            }
+            case STRING: {
+                String s = tryDecodeUtf8Roundtrip(lv.buf, lv.off, lv.len);
+                lv.utf8 = s;
+                lv.subMessage = null;
+                lv.view = s != null ? LenView.UTF8 : LenView.HEX;
+                return;
+            }
+            default:
+                lv.utf8 = null;
+                lv.subMessage = null;
+                lv.view = LenView.HEX;
+        }
+    }
+
+    private static WeProtoData parseSubMessageWithSchema(byte[] b, int off, int len, WeProtoSchema schema, boolean lazy) {
+        try {
+            WeProtoData sub = new WeProtoData();
+            sub.lazy = lazy;
+            sub.schema = schema;
+            sub.parseMessageBytes(b, off, len, true);
+            return sub;
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private static String tryDecodeUtf8Roundtrip(byte[] b, int off, int len) {
         try {
-            String s = new String(b, StandardCharsets.UTF_8);
+            String s = new String(b, off, len, StandardCharsets.UTF_8);
             byte[] re = s.getBytes(StandardCharsets.UTF_8);
-            if (Arrays.equals(b, re)) return s;
+            if (rangeEquals(b, off, len, re)) return s;
         } catch (Exception ignored) { }
         return null;
     }
 
-    private static WeProtoData tryParseSubMessageStrong(byte[] b) {
+    private static boolean rangeEquals(byte[] b, int off, int len, byte[] other) {
+        if (other.length != len) return false;
+        for (int i = 0; i < len; i++) {
+            if (b[off + i] != other[i]) return false;
+        }
+        return true;
+    }
+
+    private static WeProtoData tryParseSubMessageStrong(byte[] b, int off, int len, boolean lazy) {
         try {
-            if (b == null || b.length == 0) return null;
+            if (b == null || len == 0) return null;
             WeProtoData sub = new WeProtoData();
-            sub.parseMessageBytes(b, true);
+            sub.lazy = lazy;
+            // 用规范编码校验代替重新序列化比对，二者等价
+            if (!sub.parseMessageBytes(b, off, len, !lazy)) return null;
             if (sub.fields.isEmpty()) return null;
-            byte[] re = sub.toMessageBytes();
-            if (!Arrays.equals(b, re)) return null;
             return sub;
         } catch (Exception ignored) {
             return null;
         }
     }
 
-    private static WeProtoData ensureSubParsedStrong(LenValue lv) {
+    private WeProtoData ensureSubParsedStrong(LenValue lv) {
         if (lv == null) return null;
         if (lv.subMessage != null) return lv.subMessage;
-        WeProtoData sub = tryParseSubMessageStrong(lv.raw);
+        if (lv.hint != null) {
+            if (lv.view == LenView.AUTO) analyzeLenValueByHint(lv, lazy);
+            if (lv.hint != null) return lv.subMessage;
+        }
+        WeProtoData sub = tryParseSubMessageStrong(lv.buf, lv.off, lv.len, lazy);
         if (sub != null) lv.subMessage = sub;
         return lv.subMessage;
     }
@@ -204,7 +397,8 @@ public class WeProtoData {
     private static String ensureUtf8Decoded(LenValue lv) {
         if (lv == null) return null;
         if (lv.utf8 != null) return lv.utf8;
-        String s = tryDecodeUtf8Roundtrip(lv.raw);
+        if (lv.hint != null && lv.hint.kind == WeProtoSchema.Kind.BYTES) return null;
+        String s = tryDecodeUtf8Roundtrip(lv.buf, lv.off, lv.len);
         if (s != null) lv.utf8 = s;
         return lv.utf8;
     }
@@ -234,6 +428,14 @@ public class WeProtoData {
     }
 
     private Object fieldValueToJsonValue(Field f) throws Exception {
+        Object v = fieldViewValue(f);
+        return v instanceof WeProtoData ? ((WeProtoData) v).toJSON() : v;
+    }
+
+    /**
+     * 字段在 JSON 视图中的取值，规则与 {@link #toJSON} 相同，只是子消息返回 WeProtoData 本身
+     */
+    private Object fieldViewValue(Field f) {
         if (f.wireType != 2) return f.value;
 
         LenValue lv = (LenValue) f.value;
@@ -243,7 +445,7 @@ public class WeProtoData {
             WeProtoData sub = ensureSubParsedStrong(lv);
             if (sub != null) {
                 lv.view = LenView.SUB;
-                return sub.toJSON();
+                return sub;
             }
             String s = ensureUtf8Decoded(lv);
             if (s != null) {
@@ -251,32 +453,109 @@ public class WeProtoData {
                 return s;
             }
             lv.view = LenView.HEX;
-            return "hex->" + bytesToHex(lv.raw);
+            return "hex->" + bytesToHex(lv.buf, lv.off, lv.len);
         }
 
         if (v == LenView.SUB) {
             WeProtoData sub = ensureSubParsedStrong(lv);
-            if (sub != null) return sub.toJSON();
+            if (sub != null) return sub;
             String s = ensureUtf8Decoded(lv);
             if (s != null) return s;
-            return "hex->" + bytesToHex(lv.raw);
+            return "hex->" + bytesToHex(lv.buf, lv.off, lv.len);
         }
 
         if (v == LenView.UTF8) {
             String s = ensureUtf8Decoded(lv);
             if (s != null) return s;
             WeProtoData sub = ensureSubParsedStrong(lv);
-            if (sub != null) return sub.toJSON();
-            return "hex->" + bytesToHex(lv.raw);
+            if (sub != null) return sub;
+            return "hex->" + bytesToHex(lv.buf, lv.off, lv.len);
         }
 
-        return "hex->" + bytesToHex(lv.raw);
+        return "hex->" + bytesToHex(lv.buf, lv.off, lv.len);
+    }
+
+    /**
+     * 按首次出现的顺序返回所有字段号（不重复）
+     */
+    public int[] getFieldNumbers() {
+        int[] out = new int[fields.size()];
+        int n = 0;
+        outer:
+        for (Field f : fields) {
+            for (int i = 0; i < n; i++) {
+                if (out[i] == f.fieldNumber) continue outer;
+            }
+            out[n++] = f.fieldNumber;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    public int getFieldCount(int fieldNumber) {
+        int count = 0;
+        for (Field f : fields) {
+            if (f.fieldNumber == fieldNumber) count++;
+        }
+        return count;
+    }
+
+    /**
+     * 读取单个字段在 JSON 视图中的取值，只解码这一个字段，字段不存在时返回 null
+     * 标量为 Long / Integer，字符串与 "hex->" 形式同 {@link #toJSON}，子消息返回 WeProtoData 本身；
+     * 直接修改返回的子消息后，需对所有上层消息调用 {@link #markModified}
+     */
+    public Object getFieldValue(int fieldNumber, int occurrenceIndex) {
+        int idx = findFieldIndex(fieldNumber, occurrenceIndex);
+        return idx < 0 ? null : fieldViewValue(fields.get(idx));
+    }
+
+    /**
+     * 按 {@link #applyViewJSON} 中单个键的规则设置整个字段号，value 可以是
+     * Number / String / JSONObject / JSONArray，为 null 时删除该字段号的所有出现
+     * @return 改动数
+     */
+    public int setFieldValue(int fieldNumber, Object value) {
+        int changes = applyKey(fieldNumber, value, true, true);
+        if (changes > 0) markDirty();
+        return changes;
+    }
+
+    /**
+     * 设置字段号的第 occurrenceIndex 次出现，occurrenceIndex 等于现有个数时追加
+     * @return 改动数
+     */
+    public int setFieldValue(int fieldNumber, int occurrenceIndex, Object value) {
+        if (value == null || value == JSONObject.NULL) return 0;
+        int idx = findFieldIndex(fieldNumber, occurrenceIndex);
+        int changes;
+        if (idx >= 0) {
+            changes = applyOne(fields.get(idx), value, true, true);
+        } else if (occurrenceIndex == getFieldCount(fieldNumber)) {
+            addJsonValueAsField(fieldNumber, value);
+            changes = 1;
+        } else {
+            return 0;
+        }
+        if (changes > 0) markDirty();
+        return changes;
+    }
+
+    /**
+     * 子消息被直接修改后由调用方通知上层消息，使其在序列化时重新编码而不是拷贝原始切片
+     */
+    public void markModified() {
+        markDirty();
     }
 
     public static String bytesToHex(byte[] bytes) {
-        if (bytes == null || bytes.length == 0) return "";
-        StringBuilder sb = new StringBuilder(bytes.length * 2);
-        for (byte b : bytes) sb.append(String.format("%02X", b & 0xFF));
+        if (bytes == null) return "";
+        return bytesToHex(bytes, 0, bytes.length);
+    }
+
+    private static String bytesToHex(byte[] bytes, int off, int len) {
+        if (bytes == null || len == 0) return "";
+        StringBuilder sb = new StringBuilder(len * 2);
+        for (int i = off; i < off + len; i++) sb.append(String.format("%02X", bytes[i] & 0xFF));
         return sb.toString();
     }
 
@@ -285,58 +564,101 @@ public class WeProtoData {
     }
 
     public byte[] toMessageBytes() {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        CodedOutputStream out = CodedOutputStream.newInstance(bos);
+        return toBytesWithPrefix(null);
+    }
+
+    public byte[] toPacketBytes() {
+        return toBytesWithPrefix(packetPrefix);
+    }
+
+    /**
+     * 先计算整棵树的编码长度，再一次性写入预分配好的数组
+     * 未修改的子树直接拷贝其来源切片，只有被修改过的节点重新编码
+     */
+    private byte[] toBytesWithPrefix(byte[] prefix) {
+        int prefixLen = prefix != null ? prefix.length : 0;
         try {
-            for (Field f : fields) {
-                switch (f.wireType) {
-                    case 0: {
-                        long v = (Long) f.value;
-                        if (v >= 0) out.writeUInt64(f.fieldNumber, v);
-                        else out.writeInt64(f.fieldNumber, v);
-                        break;
-                    }
-                    case 1: {
-                        long v = (Long) f.value;
-                        out.writeFixed64(f.fieldNumber, v);
-                        break;
-                    }
-                    case 2: {
-                        LenValue lv = (LenValue) f.value;
-                        if (lv.subMessage != null) {
-                            byte[] newRaw = lv.subMessage.toMessageBytes();
-                            if (!Arrays.equals(newRaw, lv.raw)) lv.raw = newRaw;
-                        } else if (lv.utf8 != null && lv.view == LenView.UTF8) {
-                            byte[] newRaw = lv.utf8.getBytes(StandardCharsets.UTF_8);
-                            if (!Arrays.equals(newRaw, lv.raw)) lv.raw = newRaw;
-                        }
-                        out.writeByteArray(f.fieldNumber, lv.raw != null ? lv.raw : new byte[0]);
-                        break;
-                    }
-                    case 5: {
-                        int v = (Integer) f.value;
-                        out.writeFixed32(f.fieldNumber, v);
-                        break;
-                    }
-                    default:
-                        break;
-                }
-            }
-            out.flush();
-            return bos.toByteArray();
+            int size = computeSize();
+            byte[] out = new byte[prefixLen + size];
+            if (prefixLen > 0) System.arraycopy(prefix, 0, out, 0, prefixLen);
+            CodedOutputStream cos = CodedOutputStream.newInstance(out, prefixLen, size);
+            writeTo(cos);
+            cos.checkNoSpaceLeft();
+            return out;
         } catch (Exception e) {
             WeLogger.e("WeProtoData - toBytes", e);
             return new byte[0];
         }
     }
 
-    public byte[] toPacketBytes() {
-        byte[] body = toMessageBytes();
-        if (packetPrefix == null || packetPrefix.length == 0) return body;
-        byte[] out = new byte[packetPrefix.length + body.length];
-        System.arraycopy(packetPrefix, 0, out, 0, packetPrefix.length);
-        System.arraycopy(body, 0, out, packetPrefix.length, body.length);
-        return out;
+    private int computeSize() {
+        if (!dirty) return cachedSize = sourceLen;
+
+        int size = 0;
+        for (Field f : fields) {
+            size += CodedOutputStream.computeTagSize(f.fieldNumber);
+            switch (f.wireType) {
+                case 0:
+                    size += CodedOutputStream.computeUInt64SizeNoTag((Long) f.value);
+                    break;
+                case 1:
+                    size += 8;
+                    break;
+                case 2: {
+                    LenValue lv = (LenValue) f.value;
+                    WeProtoData sub = lv.subMessage;
+                    int len = sub != null && sub.dirty ? sub.computeSize() : lv.len;
+                    size += CodedOutputStream.computeUInt32SizeNoTag(len) + len;
+                    break;
+                }
+                case 5:
+                    size += 4;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return cachedSize = size;
+    }
+
+    /**
+     * 调用前必须先执行 computeSize，以便写出已修改子消息的长度前缀
+     */
+    private void writeTo(CodedOutputStream out) throws IOException {
+        if (!dirty) {
+            out.writeRawBytes(source, sourceOff, sourceLen);
+            return;
+        }
+
+        for (Field f : fields) {
+            switch (f.wireType) {
+                case 0:
+                    out.writeUInt64(f.fieldNumber, (Long) f.value);
+                    break;
+                case 1:
+                    out.writeFixed64(f.fieldNumber, (Long) f.value);
+                    break;
+                case 2: {
+                    LenValue lv = (LenValue) f.value;
+                    WeProtoData sub = lv.subMessage;
+                    out.writeTag(f.fieldNumber, 2);
+                    if (sub != null && sub.dirty) {
+                        out.writeUInt32NoTag(sub.cachedSize);
+                        sub.writeTo(out);
+                    } else {
+                        // 未修改的字段（包括未解码的惰性切片）原样写出
+                        out.writeUInt32NoTag(lv.len);
+                        out.writeRawBytes(lv.buf, lv.off, lv.len);
+                    }
+                    break;
+                }
+                case 5:
+                    out.writeFixed32(f.fieldNumber, (Integer) f.value);
+                    break;
+                default:
+                    break;
+            }
+        }
     }
 
     private int findFieldIndex(int fieldNumber, int occurrenceIndex) {
@@ -355,6 +677,7 @@ public class WeProtoData {
         int idx = findFieldIndex(fieldNumber, occurrenceIndex);
         if (idx < 0) return false;
         fields.get(idx).value = value;
+        markDirty();
         return true;
     }
 
@@ -362,6 +685,7 @@ public class WeProtoData {
         int idx = findFieldIndex(fieldNumber, occurrenceIndex);
         if (idx < 0) return false;
         fields.get(idx).value = value;
+        markDirty();
         return true;
     }
 
@@ -369,6 +693,7 @@ public class WeProtoData {
         int idx = findFieldIndex(fieldNumber, occurrenceIndex);
         if (idx < 0) return false;
         fields.get(idx).value = value;
+        markDirty();
         return true;
     }
 
@@ -380,10 +705,11 @@ public class WeProtoData {
         LenValue lv = (LenValue) f.value;
 
         String h = stripNonHex(hex);
-        lv.raw = h.isEmpty() ? new byte[0] : hexToBytes(h);
+        lv.setRaw(h.isEmpty() ? new byte[0] : hexToBytes(h));
         lv.utf8 = null;
         lv.subMessage = null;
         lv.view = LenView.HEX;
+        markDirty();
         return true;
     }
 
@@ -396,9 +722,10 @@ public class WeProtoData {
 
         if (text == null) text = "";
         lv.utf8 = text;
-        lv.raw = text.getBytes(StandardCharsets.UTF_8);
+        lv.setRaw(text.getBytes(StandardCharsets.UTF_8));
         lv.subMessage = null;
         lv.view = LenView.UTF8;
+        markDirty();
         return true;
     }
 
@@ -409,11 +736,12 @@ public class WeProtoData {
         if (f.wireType != 2) return false;
         LenValue lv = (LenValue) f.value;
 
-        WeProtoData sub = tryParseSubMessageStrong(subBytes);
-        lv.raw = subBytes != null ? subBytes : new byte[0];
+        lv.setRaw(subBytes);
+        WeProtoData sub = tryParseSubMessageStrong(lv.buf, lv.off, lv.len, lazy);
         lv.subMessage = sub;
         lv.utf8 = null;
         lv.view = sub != null ? LenView.SUB : LenView.HEX;
+        markDirty();
         return true;
     }
 
@@ -421,6 +749,7 @@ public class WeProtoData {
         int idx = findFieldIndex(fieldNumber, occurrenceIndex);
         if (idx < 0) return false;
         fields.remove(idx);
+        markDirty();
         return true;
     }
 
@@ -440,11 +769,12 @@ public class WeProtoData {
             if (sub != null) {
                 int subChanged = sub.replaceUtf8ContainsInternal(needle, replacement);
                 if (subChanged > 0) {
+                    // 子消息已标记为脏，序列化时再统一编码
                     lv.subMessage = sub;
-                    lv.raw = sub.toMessageBytes();
                     lv.utf8 = null;
                     lv.view = LenView.SUB;
                     changed += subChanged;
+                    continue;
                 }
             }
 
@@ -453,13 +783,14 @@ public class WeProtoData {
                 String ns = s.replace(needle, replacement);
                 if (!ns.equals(s)) {
                     lv.utf8 = ns;
-                    lv.raw = ns.getBytes(StandardCharsets.UTF_8);
+                    lv.setRaw(ns.getBytes(StandardCharsets.UTF_8));
                     lv.subMessage = null;
                     lv.view = LenView.UTF8;
                     changed++;
                 }
             }
         }
+        if (changed > 0) markDirty();
         return changed;
     }
 
@@ -479,11 +810,12 @@ public class WeProtoData {
             if (sub != null) {
                 int subMatches = sub.replaceUtf8RegexInternal(pattern, replacement);
                 if (subMatches > 0) {
+                    // 子消息已标记为脏，序列化时再统一编码
                     lv.subMessage = sub;
-                    lv.raw = sub.toMessageBytes();
                     lv.utf8 = null;
                     lv.view = LenView.SUB;
                     matchesTotal += subMatches;
+                    continue;
                 }
             }
 
@@ -495,13 +827,14 @@ public class WeProtoData {
                 if (cnt > 0) {
                     String ns = pattern.matcher(s).replaceAll(replacement);
                     lv.utf8 = ns;
-                    lv.raw = ns.getBytes(StandardCharsets.UTF_8);
+                    lv.setRaw(ns.getBytes(StandardCharsets.UTF_8));
                     lv.subMessage = null;
                     lv.view = LenView.UTF8;
                     matchesTotal += cnt;
                 }
             }
         }
+        if (matchesTotal > 0) markDirty();
         return matchesTotal;
     }
 
@@ -529,7 +862,7 @@ public class WeProtoData {
                 if (value instanceof JSONObject) {
                     WeProtoData sub = new WeProtoData();
                     sub.fromJSON((JSONObject) value);
-                    LenValue lv = new LenValue(sub.toMessageBytes());
+                    LenValue lv = new LenValue(null);
                     lv.subMessage = sub;
                     lv.view = LenView.SUB;
                     fields.add(new Field(fieldNumber, 2, lv));
@@ -551,7 +884,7 @@ public class WeProtoData {
             if (value instanceof JSONObject) {
                 WeProtoData sub = new WeProtoData();
                 sub.fromJSON((JSONObject) value);
-                LenValue lv = new LenValue(sub.toMessageBytes());
+                LenValue lv = new LenValue(null);
                 lv.subMessage = sub;
                 lv.view = LenView.SUB;
                 fields.add(new Field(fieldNumber, 2, lv));
@@ -579,6 +912,13 @@ public class WeProtoData {
     }
 
     public int applyViewJSON(JSONObject view, boolean deleteMissing) {
+        return applyViewJSON(view, deleteMissing, false);
+    }
+
+    /**
+     * addMissing 为 true 时，视图中新出现的字段号以及超出原有个数的重复字段按 {@link #fromJSON} 的规则追加
+     */
+    public int applyViewJSON(JSONObject view, boolean deleteMissing, boolean addMissing) {
         if (view == null) return 0;
 
         int changes = 0;
@@ -605,94 +945,115 @@ public class WeProtoData {
                 continue;
             }
 
-            Object val = view.opt(key);
-            if (val == null || val == JSONObject.NULL) {
-                if (deleteMissing) changes += removeAllOccurrences(fn);
-                continue;
-            }
+            changes += applyKey(fn, view.opt(key), deleteMissing, addMissing);
+        }
+
+        if (changes > 0) markDirty();
+        return changes;
+    }
 
-            if (val instanceof JSONArray) {
-                JSONArray arr = (JSONArray) val;
-                List<Integer> idxs = indicesOf(fn);
+    private int applyKey(int fn, Object val, boolean deleteMissing, boolean addMissing) {
+        if (val == null || val == JSONObject.NULL) {
+            return deleteMissing ? removeAllOccurrences(fn) : 0;
+        }
 
-                int min = Math.min(arr.length(), idxs.size());
-                for (int i = 0; i < min; i++) {
+        int changes = 0;
+        if (val instanceof JSONArray) {
+            JSONArray arr = (JSONArray) val;
+            List<Integer> idxs = indicesOf(fn);
+
+            int min = Math.min(arr.length(), idxs.size());
+            for (int i = 0; i < min; i++) {
+                Object v = arr.opt(i);
+                if (v == JSONObject.NULL) continue;
+                changes += applyOne(fields.get(idxs.get(i)), v, deleteMissing, addMissing);
+            }
+
+            if (addMissing) {
+                for (int i = idxs.size(); i < arr.length(); i++) {
                     Object v = arr.opt(i);
-                    if (v == JSONObject.NULL) continue;
-                    changes += applyOne(fields.get(idxs.get(i)), v, deleteMissing);
+                    if (v == null || v == JSONObject.NULL) continue;
+                    addJsonValueAsField(fn, v);
+                    changes++;
                 }
+            }
 
-                if (deleteMissing && idxs.size() > arr.length()) {
-                    for (int i = idxs.size() - 1; i >= arr.length(); i--) {
-                        fields.remove((int) idxs.get(i));
-                        changes++;
-                    }
-                }
-            } else {
-                int idx = findFieldIndex(fn, 0);
-                if (idx >= 0) {
-                    changes += applyOne(fields.get(idx), val, deleteMissing);
+            if (deleteMissing && idxs.size() > arr.length()) {
+                for (int i = idxs.size() - 1; i >= arr.length(); i--) {
+                    fields.remove((int) idxs.get(i));
+                    changes++;
                 }
             }
+        } else {
+            int idx = findFieldIndex(fn, 0);
+            if (idx >= 0) {
+                changes += applyOne(fields.get(idx), val, deleteMissing, addMissing);
+            } else if (addMissing) {
+                addJsonValueAsField(fn, val);
+                changes++;
+            }
         }
-
         return changes;
     }
 
-    private int applyOne(Field f, Object val, boolean deleteMissing) {
+    private int applyOne(Field f, Object val, boolean deleteMissing, boolean addMissing) {
         if (f == null || val == null || val == JSONObject.NULL) return 0;
 
         try {
             switch (f.wireType) {
+                // 值未变化时不计为修改，保证未触碰的子树在序列化时可以直接拷贝
                 case 0, 1: {
-                    if (val instanceof Number) {
-                        f.value = ((Number) val).longValue();
-                        return 1;
-                    }
-                    if (val instanceof String) {
-                        f.value = Long.parseLong((String) val);
-                        return 1;
-                    }
-                    return 0;
+                    long v;
+                    if (val instanceof Number) v = ((Number) val).longValue();
+                    else if (val instanceof String) v = Long.parseLong((String) val);
+                    else return 0;
+                    if (f.value instanceof Long && (Long) f.value == v) return 0;
+                    f.value = v;
+                    return 1;
                 }
                 case 5: {
-                    if (val instanceof Number) {
-                        f.value = ((Number) val).intValue();
-                        return 1;
-                    }
-                    if (val instanceof String) {
-                        f.value = Integer.parseInt((String) val);
-                        return 1;
-                    }
-                    return 0;
+                    int v;
+                    if (val instanceof Number) v = ((Number) val).intValue();
+                    else if (val instanceof String) v = Integer.parseInt((String) val);
+                    else return 0;
+                    if (f.value instanceof Integer && (Integer) f.value == v) return 0;
+                    f.value = v;
+                    return 1;
                 }
                 case 2: {
                     LenValue lv = (LenValue) f.value;
 
                     if (val instanceof JSONObject) {
                         WeProtoData sub = ensureSubParsedStrong(lv);
-                        if (sub == null) {
+                        boolean created = sub == null;
+                        if (created) {
                             sub = new WeProtoData();
+                            sub.lazy = lazy;
                         }
-                        int c = sub.applyViewJSON((JSONObject) val, deleteMissing);
+                        int c = sub.applyViewJSON((JSONObject) val, deleteMissing, addMissing);
                         lv.subMessage = sub;
-                        lv.raw = sub.toMessageBytes();
                         lv.utf8 = null;
                         lv.view = LenView.SUB;
-                        return Math.max(1, c);
+                        return created ? Math.max(1, c) : c;
                     }
 
                     if (val instanceof String) {
                         String s = (String) val;
                         if (s.startsWith("hex->")) {
                             byte[] raw = hexToBytes(stripNonHex(s.substring(5)));
-                            lv.raw = raw != null ? raw : new byte[0];
+                            if (lv.view == LenView.HEX && lv.subMessage == null
+                                    && raw != null && rangeEquals(lv.buf, lv.off, lv.len, raw)) return 0;
+                            lv.setRaw(raw);
                             lv.utf8 = null;
                             lv.subMessage = null;
                             lv.view = LenView.HEX;
                         } else {
+                            if (lv.subMessage == null && s.equals(ensureUtf8Decoded(lv))) {
+                                lv.view = LenView.UTF8;
+                                return 0;
+                            }
                             lv.utf8 = s;
-                            lv.raw = s.getBytes(StandardCharsets.UTF_8);
+                            lv.setRaw(s.getBytes(StandardCharsets.UTF_8));
                             lv.subMessage = null;
                             lv.view = LenView.UTF8;
                         }
@@ -0,0 +1,791 @@
+package moe.ouom.wekit.util;
+
+import static cn.hutool.core.convert.Convert.hexToBytes;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Protobuf 与 JSON 文本之间的流式编解码
+ * 不经过 {@link WeProtoData} 或 org.json 对象树，JSON 结构与 {@link WeProtoData#toJSON()} 一致：
+ * 键为字段号，重复字段为数组，子消息为对象，无法识别为文本的字节串写作 "hex->..."
+ * <p>
+ * JSON 转回线格式时可传入原始数据包作为模板，用于沿用原字段的 wireType（fixed32 / fixed64）与包头
+ */
+public final class WeProtoJsonCodec {
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String HEX_PREFIX = "hex->";
+
+    private WeProtoJsonCodec() {
+    }
+
+    // ======================== 线格式 -> JSON ========================
+
+    public static String toJson(byte[] packet) throws IOException {
+        return toJson(packet, null);
+    }
+
+    public static String toJson(byte[] packet, WeProtoSchema schema) throws IOException {
+        StringBuilder sb = new StringBuilder(packet != null ? packet.length * 2 : 2);
+        toJson(packet, schema, sb);
+        return sb.toString();
+    }
+
+    /**
+     * 将数据包直接写为 JSON 文本，带 4 字节包头时自动跳过
+     */
+    public static void toJson(byte[] packet, WeProtoSchema schema, StringBuilder out) throws IOException {
+        if (packet == null) {
+            out.append("{}");
+            return;
+        }
+        int off = WeProtoData.hasPacketPrefix(packet) ? 4 : 0;
+        Index idx = new Index();
+        scan(packet, off, packet.length - off, idx);
+        writeMessage(packet, idx, schema, out);
+    }
+
+    /**
+     * 一层消息内各字段的位置索引，只记录偏移不解码
+     */
+    private static final class Index {
+        int size;
+        int[] numbers = new int[16];
+        int[] wireTypes = new int[16];
+        int[] offs = new int[16];
+        int[] lens = new int[16];
+        long[] values = new long[16];
+
+        void add(int fieldNumber, int wireType, long value, int off, int len) {
+            if (size == numbers.length) {
+                int n = size * 2;
+                numbers = Arrays.copyOf(numbers, n);
+                wireTypes = Arrays.copyOf(wireTypes, n);
+                offs = Arrays.copyOf(offs, n);
+                lens = Arrays.copyOf(lens, n);
+                values = Arrays.copyOf(values, n);
+            }
+            numbers[size] = fieldNumber;
+            wireTypes[size] = wireType;
+            values[size] = value;
+            offs[size] = off;
+            lens[size] = len;
+            size++;
+        }
+    }
+
+    /**
+     * 扫描 b[off, off + len) 建立字段索引，非法输入抛出异常
+     *
+     * @return 是否为规范编码
+     */
+    private static boolean scan(byte[] b, int off, int len, Index idx) throws IOException {
+        boolean canonical = true;
+        CodedInputStream in = CodedInputStream.newInstance(b, off, len);
+        while (!in.isAtEnd()) {
+            int start = in.getTotalBytesRead();
+            int tag = in.readTag();
+            if (in.getTotalBytesRead() - start != CodedOutputStream.computeUInt32SizeNoTag(tag)) {
+                canonical = false;
+            }
+            int fieldNumber = tag >>> 3;
+            int wireType = tag & 7;
+            switch (wireType) {
+                case 0: {
+                    start = in.getTotalBytesRead();
+                    long v = in.readInt64();
+                    if (in.getTotalBytesRead() - start != CodedOutputStream.computeUInt64SizeNoTag(v)) {
+                        canonical = false;
+                    }
+                    idx.add(fieldNumber, 0, v, 0, 0);
+                    break;
+                }
+                case 1:
+                    idx.add(fieldNumber, 1, in.readFixed64(), 0, 0);
+                    break;
+                case 5:
+                    idx.add(fieldNumber, 5, in.readFixed32(), 0, 0);
+                    break;
+                case 2: {
+                    start = in.getTotalBytesRead();
+                    int size = in.readRawVarint32();
+                    if (in.getTotalBytesRead() - start != CodedOutputStream.computeUInt32SizeNoTag(size)) {
+                        canonical = false;
+                    }
+                    int dataOff = off + in.getTotalBytesRead();
+                    in.skipRawBytes(size);
+                    idx.add(fieldNumber, 2, 0, dataOff, size);
+                    break;
+                }
+                default:
+                    throw new IOException("Unexpected wireType: " + wireType);
+            }
+        }
+        return canonical;
+    }
+
+    private static Index tryScan(byte[] b, int off, int len, boolean requireCanonical) {
+        try {
+            Index idx = new Index();
+            boolean canonical = scan(b, off, len, idx);
+            if (requireCanonical && !canonical) return null;
+            return idx;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeMessage(byte[] b, Index idx, WeProtoSchema schema, StringBuilder sb) {
+        sb.append('{');
+        boolean[] handled = new boolean[idx.size];
+        boolean first = true;
+        for (int i = 0; i < idx.size; i++) {
+            if (handled[i]) continue;
+            int fieldNumber = idx.numbers[i];
+
+            int count = 0;
+            for (int j = i; j < idx.size; j++) {
+                if (idx.numbers[j] == fieldNumber) count++;
+            }
+
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(fieldNumber).append("\":");
+
+            WeProtoSchema.Entry hint = schema != null ? schema.get(fieldNumber) : null;
+            if (count == 1) {
+                writeValue(b, idx, i, hint, sb);
+                continue;
+            }
+
+            sb.append('[');
+            boolean firstItem = true;
+            for (int j = i; j < idx.size; j++) {
+                if (idx.numbers[j] != fieldNumber) continue;
+                handled[j] = true;
+                if (!firstItem) sb.append(',');
+                firstItem = false;
+                writeValue(b, idx, j, hint, sb);
+            }
+            sb.append(']');
+        }
+        sb.append('}');
+    }
+
+    private static void writeValue(byte[] b, Index idx, int i, WeProtoSchema.Entry hint, StringBuilder sb) {
+        switch (idx.wireTypes[i]) {
+            case 0:
+            case 1:
+                sb.append(idx.values[i]);
+                return;
+            case 5:
+                sb.append((int) idx.values[i]);
+                return;
+            default:
+                writeLen(b, idx.offs[i], idx.lens[i], hint, sb);
+        }
+    }
+
+    /**
+     * 长度分隔字段的判定顺序与 WeProtoData 一致：类型提示优先，其次子消息、UTF-8，最后 hex
+     */
+    private static void writeLen(byte[] b, int off, int len, WeProtoSchema.Entry hint, StringBuilder sb) {
+        if (hint != null) {
+            switch (hint.kind) {
+                case MESSAGE: {
+                    Index sub = tryScan(b, off, len, false);
+                    if (sub != null) {
+                        writeMessage(b, sub, hint.message, sb);
+                        return;
+                    }
+                    break;
+                }
+                case STRING: {
+                    String s = decodeUtf8Roundtrip(b, off, len);
+                    if (s != null) quote(s, sb);
+                    else writeHex(b, off, len, sb);
+                    return;
+                }
+                default:
+                    writeHex(b, off, len, sb);
+                    return;
+            }
+        }
+
+        if (len > 0) {
+            Index sub = tryScan(b, off, len, true);
+            if (sub != null && sub.size > 0) {
+                writeMessage(b, sub, null, sb);
+                return;
+            }
+        }
+
+        String s = decodeUtf8Roundtrip(b, off, len);
+        if (s != null) {
+            quote(s, sb);
+            return;
+        }
+        writeHex(b, off, len, sb);
+    }
+
+    private static String decodeUtf8Roundtrip(byte[] b, int off, int len) {
+        String s = new String(b, off, len, StandardCharsets.UTF_8);
+        byte[] re = s.getBytes(StandardCharsets.UTF_8);
+        if (re.length != len) return null;
+        for (int i = 0; i < len; i++) {
+            if (re[i] != b[off + i]) return null;
+        }
+        return s;
+    }
+
+    private static void writeHex(byte[] b, int off, int len, StringBuilder sb) {
+        sb.append('"').append(HEX_PREFIX);
+        for (int i = off; i < off + len; i++) {
+            sb.append(HEX[(b[i] >> 4) & 0xF]).append(HEX[b[i] & 0xF]);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * JSON 字符串转义，额外转义 U+2028 / U+2029 以便结果可以直接拼入 JS 源码
+     */
+    private static void quote(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        sb.append("\\u");
+                        sb.append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                                .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    // ======================== JSON -> 线格式 ========================
+
+    /**
+     * 将 JSON 文本直接编码为 Protobuf 消息体
+     * 整数写为 varint，"hex->" 字符串写为原始字节，其余字符串按 UTF-8 写出，对象为子消息，数组为重复字段
+     */
+    public static byte[] fromJson(CharSequence json) throws IOException {
+        return fromJson(json, null);
+    }
+
+    /**
+     * 以 template 为模板将 JSON 文本编码为数据包
+     * 模板中存在的字段沿用其 wireType，模板带包头时结果保留同样的包头
+     */
+    public static byte[] fromJson(CharSequence json, byte[] template) throws IOException {
+        int prefixLen = template != null && WeProtoData.hasPacketPrefix(template) ? 4 : 0;
+        WireBuffer out = new WireBuffer(Math.max(64, template != null ? template.length + 16 : json.length() / 2));
+        if (prefixLen > 0) out.writeBytes(template, 0, prefixLen);
+
+        Template t = template != null ? Template.of(template, prefixLen, template.length - prefixLen) : null;
+        JsonReader r = new JsonReader(json);
+        r.skipWs();
+        encodeObject(r, t, out);
+        r.skipWs();
+        if (!r.atEnd()) throw r.error("trailing content");
+        return out.toByteArray();
+    }
+
+    /**
+     * 将已有的 JSONObject 编码为 Protobuf 消息体，规则与 {@link #fromJson(CharSequence)} 相同
+     */
+    public static byte[] fromJSONObject(JSONObject json) {
+        WireBuffer out = new WireBuffer(256);
+        writeJSONObject(json, out);
+        return out.toByteArray();
+    }
+
+    private static void writeJSONObject(JSONObject json, WireBuffer out) {
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            int fieldNumber = parseFieldNumber(key);
+            if (fieldNumber <= 0) continue;
+            writeJSONValue(fieldNumber, json.opt(key), out);
+        }
+    }
+
+    private static void writeJSONValue(int fieldNumber, Object value, WireBuffer out) {
+        if (value == null || value == JSONObject.NULL) return;
+
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            out.writeTag(fieldNumber, 0);
+            out.writeVarint64(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            out.writeTag(fieldNumber, 0);
+            out.writeVarint64((Boolean) value ? 1 : 0);
+        } else if (value instanceof JSONObject) {
+            out.writeTag(fieldNumber, 2);
+            int start = out.beginLen();
+            writeJSONObject((JSONObject) value, out);
+            out.endLen(start);
+        } else if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            for (int i = 0; i < arr.length(); i++) writeJSONValue(fieldNumber, arr.opt(i), out);
+        } else {
+            // 非整数的数字等按文本写出，与旧版 ProtoJsonBuilder 行为一致
+            writeString(fieldNumber, value.toString(), out);
+        }
+    }
+
+    private static void writeString(int fieldNumber, String s, WireBuffer out) {
+        byte[] raw = s.startsWith(HEX_PREFIX)
+                ? hexToBytes(stripNonHex(s.substring(HEX_PREFIX.length())))
+                : s.getBytes(StandardCharsets.UTF_8);
+        if (raw == null) raw = new byte[0];
+        out.writeTag(fieldNumber, 2);
+        out.writeVarint32(raw.length);
+        out.writeBytes(raw, 0, raw.length);
+    }
+
+    private static String stripNonHex(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) out.append(c);
+        }
+        return out.toString();
+    }
+
+    private static int parseFieldNumber(String key) {
+        try {
+            return Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 模板消息中一层字段的索引，按字段号与出现次序查找原字段
+     */
+    private static final class Template {
+        final byte[] b;
+        final Index idx;
+        private int lastField = -1;
+        private int lastOccurrence = -1;
+        private int lastIndex = -1;
+
+        private Template(byte[] b, Index idx) {
+            this.b = b;
+            this.idx = idx;
+        }
+
+        static Template of(byte[] b, int off, int len) {
+            Index idx = tryScan(b, off, len, false);
+            return idx != null ? new Template(b, idx) : null;
+        }
+
+        /**
+         * 查找字段的第 occurrence 次出现，连续访问同一字段时从上次位置继续
+         */
+        int find(int fieldNumber, int occurrence) {
+            int from = 0;
+            int occ = 0;
+            if (fieldNumber == lastField && occurrence > lastOccurrence) {
+                from = lastIndex + 1;
+                occ = lastOccurrence + 1;
+            }
+            for (int i = from; i < idx.size; i++) {
+                if (idx.numbers[i] != fieldNumber) continue;
+                if (occ == occurrence) {
+                    lastField = fieldNumber;
+                    lastOccurrence = occurrence;
+                    lastIndex = i;
+                    return i;
+                }
+                occ++;
+            }
+            return -1;
+        }
+    }
+
+    private static void encodeObject(JsonReader r, Template t, WireBuffer out) throws IOException {
+        r.expect('{');
+        r.skipWs();
+        if (r.peek() == '}') {
+            r.pos++;
+            return;
+        }
+        while (true) {
+            r.skipWs();
+            String key = r.readString();
+            r.skipWs();
+            r.expect(':');
+            r.skipWs();
+
+            int fieldNumber = parseFieldNumber(key);
+            if (fieldNumber <= 0) {
+                r.skipValue();
+            } else if (r.peek() == '[') {
+                r.pos++;
+                int[] occurrence = {0};
+                encodeArray(r, fieldNumber, t, out, occurrence);
+            } else {
+                encodeValue(r, fieldNumber, t, 0, out);
+            }
+
+            r.skipWs();
+            char c = r.next();
+            if (c == ',') continue;
+            if (c == '}') return;
+            throw r.error("expected ',' or '}'");
+        }
+    }
+
+    /**
+     * 数组展开为重复字段，嵌套数组同样展开
+     */
+    private static void encodeArray(JsonReader r, int fieldNumber, Template t, WireBuffer out,
+                                    int[] occurrence) throws IOException {
+        r.skipWs();
+        if (r.peek() == ']') {
+            r.pos++;
+            return;
+        }
+        while (true) {
+            r.skipWs();
+            if (r.peek() == '[') {
+                r.pos++;
+                encodeArray(r, fieldNumber, t, out, occurrence);
+            } else {
+                encodeValue(r, fieldNumber, t, occurrence[0]++, out);
+            }
+            r.skipWs();
+            char c = r.next();
+            if (c == ',') continue;
+            if (c == ']') return;
+            throw r.error("expected ',' or ']'");
+        }
+    }
+
+    private static void encodeValue(JsonReader r, int fieldNumber, Template t, int occurrence,
+                                    WireBuffer out) throws IOException {
+        int ti = t != null ? t.find(fieldNumber, occurrence) : -1;
+        int wireType = ti >= 0 ? t.idx.wireTypes[ti] : -1;
+
+        char c = r.peek();
+        switch (c) {
+            case '{': {
+                Template sub = ti >= 0 && wireType == 2
+                        ? Template.of(t.b, t.idx.offs[ti], t.idx.lens[ti]) : null;
+                out.writeTag(fieldNumber, 2);
+                int start = out.beginLen();
+                encodeObject(r, sub, out);
+                out.endLen(start);
+                return;
+            }
+            case '"': {
+                String s = r.readString();
+                if (wireType == 0 || wireType == 1 || wireType == 5) {
+                    try {
+                        writeNumber(fieldNumber, wireType, Long.parseLong(s.trim()), out);
+                        return;
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+                writeString(fieldNumber, s, out);
+                return;
+            }
+            case 't':
+                r.expectWord("true");
+                writeNumber(fieldNumber, wireType, 1, out);
+                return;
+            case 'f':
+                r.expectWord("false");
+                writeNumber(fieldNumber, wireType, 0, out);
+                return;
+            case 'n':
+                r.expectWord("null");
+                return;
+            default: {
+                String num = r.readNumber();
+                boolean integral = num.indexOf('.') < 0 && num.indexOf('e') < 0 && num.indexOf('E') < 0;
+                if (integral) {
+                    long v;
+                    try {
+                        v = Long.parseLong(num);
+                    } catch (NumberFormatException e) {
+                        v = new BigInteger(num).longValue();
+                    }
+                    writeNumber(fieldNumber, wireType, v, out);
+                } else if (wireType == 0 || wireType == 1 || wireType == 5) {
+                    writeNumber(fieldNumber, wireType, (long) Double.parseDouble(num), out);
+                } else {
+                    writeString(fieldNumber, num, out);
+                }
+            }
+        }
+    }
+
+    private static void writeNumber(int fieldNumber, int wireType, long v, WireBuffer out) {
+        switch (wireType) {
+            case 1:
+                out.writeTag(fieldNumber, 1);
+                out.writeFixed64(v);
+                break;
+            case 5:
+                out.writeTag(fieldNumber, 5);
+                out.writeFixed32((int) v);
+                break;
+            default:
+                out.writeTag(fieldNumber, 0);
+                out.writeVarint64(v);
+        }
+    }
+
+    /**
+     * 可增长的线格式输出缓冲
+     * 子消息先写内容，结束时按实际长度回填长度前缀，避免为每层子消息单独分配数组
+     */
+    private static final class WireBuffer {
+        byte[] buf;
+        int pos;
+
+        WireBuffer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void ensure(int n) {
+            if (pos + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+        }
+
+        void writeTag(int fieldNumber, int wireType) {
+            writeVarint32((fieldNumber << 3) | wireType);
+        }
+
+        void writeVarint32(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeVarint64(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeFixed32(int v) {
+            ensure(4);
+            for (int i = 0; i < 4; i++) buf[pos++] = (byte) (v >>> (i * 8));
+        }
+
+        void writeFixed64(long v) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) buf[pos++] = (byte) (v >>> (i * 8));
+        }
+
+        void writeBytes(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, buf, pos, len);
+            pos += len;
+        }
+
+        int beginLen() {
+            return pos;
+        }
+
+        void endLen(int start) {
+            int len = pos - start;
+            int k = CodedOutputStream.computeUInt32SizeNoTag(len);
+            ensure(k);
+            System.arraycopy(buf, start, buf, start + k, len);
+            pos = start;
+            writeVarint32(len);
+            pos = start + k + len;
+        }
+
+        byte[] toByteArray() {
+            return pos == buf.length ? buf : Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * 最小化的 JSON 词法读取器，只服务于上面的流式编码
+     */
+    private static final class JsonReader {
+        final CharSequence s;
+        int pos;
+
+        JsonReader(CharSequence s) {
+            this.s = s;
+        }
+
+        boolean atEnd() {
+            return pos >= s.length();
+        }
+
+        char peek() throws IOException {
+            if (atEnd()) throw error("unexpected end");
+            return s.charAt(pos);
+        }
+
+        char next() throws IOException {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        void skipWs() {
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return;
+                pos++;
+            }
+        }
+
+        void expect(char c) throws IOException {
+            if (next() != c) throw error("expected '" + c + "'");
+        }
+
+        void expectWord(String word) throws IOException {
+            for (int i = 0; i < word.length(); i++) expect(word.charAt(i));
+        }
+
+        String readString() throws IOException {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    if (sb == null) return s.subSequence(start, pos - 1).toString();
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    if (sb != null) sb.append(c);
+                    continue;
+                }
+                if (sb == null) {
+                    sb = new StringBuilder();
+                    sb.append(s, start, pos - 1);
+                }
+                char e = next();
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u': {
+                        if (pos + 4 > s.length()) throw error("bad unicode escape");
+                        sb.append((char) Integer.parseInt(s.subSequence(pos, pos + 4).toString(), 16));
+                        pos += 4;
+                        break;
+                    }
+                    default:
+                        sb.append(e);
+                }
+            }
+        }
+
+        String readNumber() throws IOException {
+            int start = pos;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') pos++;
+                else break;
+            }
+            if (start == pos) throw error("unexpected character");
+            return s.subSequence(start, pos).toString();
+        }
+
+        void skipValue() throws IOException {
+            char c = peek();
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                char close = c == '{' ? '}' : ']';
+                pos++;
+                skipWs();
+                if (peek() == close) {
+                    pos++;
+                    return;
+                }
+                while (true) {
+                    skipWs();
+                    if (c == '{') {
+                        readString();
+                        skipWs();
+                        expect(':');
+                        skipWs();
+                    }
+                    skipValue();
+                    skipWs();
+                    char n = next();
+                    if (n == ',') continue;
+                    if (n == close) return;
+                    throw error("unterminated container");
+                }
+            } else if (c == 't') {
+                expectWord("true");
+            } else if (c == 'f') {
+                expectWord("false");
+            } else if (c == 'n') {
+                expectWord("null");
+            } else {
+                readNumber();
+            }
+        }
+
+        IOException error(String msg) {
+            return new IOException("Bad JSON at " + pos + ": " + msg);
+        }
+    }
+}
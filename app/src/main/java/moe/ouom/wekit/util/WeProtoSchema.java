@@ -0,0 +1,88 @@
+package moe.ouom.wekit.util;
+
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 长度分隔字段的类型提示
+ * 为 {@link WeProtoData} 指明某个字段是子消息、UTF-8 文本还是原始字节，
+ * 命中提示的字段按提示一次性解码，不再做试探解析；未声明的字段仍走启发式判断
+ * <p>
+ * JSON 描述格式：键为字段号，值为 "string" / "bytes" / "message" 或描述子消息的嵌套对象
+ * <pre>
+ * { "1": { "1": "string" }, "2": "string", "5": "bytes" }
+ * </pre>
+ */
+public final class WeProtoSchema {
+
+    public enum Kind {
+        MESSAGE, STRING, BYTES
+    }
+
+    public static final class Entry {
+        public final Kind kind;
+        /** kind 为 MESSAGE 时子消息的描述，可为 null 表示子消息内部未声明 */
+        public final WeProtoSchema message;
+
+        Entry(Kind kind, WeProtoSchema message) {
+            this.kind = kind;
+            this.message = message;
+        }
+    }
+
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    public WeProtoSchema message(int fieldNumber, WeProtoSchema child) {
+        entries.put(fieldNumber, new Entry(Kind.MESSAGE, child));
+        return this;
+    }
+
+    public WeProtoSchema string(int fieldNumber) {
+        entries.put(fieldNumber, new Entry(Kind.STRING, null));
+        return this;
+    }
+
+    public WeProtoSchema bytes(int fieldNumber) {
+        entries.put(fieldNumber, new Entry(Kind.BYTES, null));
+        return this;
+    }
+
+    public Entry get(int fieldNumber) {
+        return entries.get(fieldNumber);
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public static WeProtoSchema fromJSON(JSONObject json) {
+        WeProtoSchema schema = new WeProtoSchema();
+        if (json == null) return schema;
+
+        Iterator<String> it = json.keys();
+        while (it.hasNext()) {
+            String key = it.next();
+            int fieldNumber;
+            try {
+                fieldNumber = Integer.parseInt(key);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            Object value = json.opt(key);
+            if (value instanceof JSONObject) {
+                schema.message(fieldNumber, fromJSON((JSONObject) value));
+            } else if ("message".equals(value)) {
+                schema.message(fieldNumber, null);
+            } else if ("string".equals(value)) {
+                schema.string(fieldNumber);
+            } else if ("bytes".equals(value)) {
+                schema.bytes(fieldNumber);
+            }
+        }
+        return schema;
+    }
+}
@@ -0,0 +1,70 @@
+package moe.ouom.wekit.util.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列，多生产者单消费者
+ * 队列满时 {@link #offer} 直接丢弃并计数，生产者永远不会阻塞
+ */
+public final class EventRing<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    // 每个槽位的序号：等于写入位置时可写，等于写入位置 + 1 时可读
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // 只由消费者线程读写
+    private long head;
+
+    public EventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        mask = size - 1;
+    }
+
+    /**
+     * 写入一个元素，队列已满时返回 false
+     */
+    public boolean offer(T item) {
+        long pos = tail.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.lazySet(idx, item);
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * 取出一个元素，队列为空时返回 null，只能由单个消费者线程调用
+     */
+    public T poll() {
+        int idx = (int) (head & mask);
+        if (sequences.get(idx) != head + 1) return null;
+        T item = slots.get(idx);
+        slots.lazySet(idx, null);
+        sequences.set(idx, head + mask + 1);
+        head++;
+        return item;
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,152 @@
+package moe.ouom.wekit.util.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁的对数-线性直方图，思路同 HdrHistogram
+ * 每个 2 的幂区间再等分为 8 个桶，相对误差不超过 12.5%；记录只做一次原子加，不加锁不分配
+ * 可记录的值为 [0, 2^40)，超出的按最大值计
+ */
+public final class LogHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    static int bucketOf(long value) {
+        if (value < SUB) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB + (int) ((value >>> shift) - SUB);
+    }
+
+    /**
+     * 桶内最大值，用作该桶的代表值
+     */
+    static long bucketUpper(int index) {
+        if (index < SUB) return index;
+        int shift = index / SUB - 1;
+        long sub = index % SUB + SUB;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        if (value > MAX_VALUE) value = MAX_VALUE;
+        buckets.getAndIncrement(bucketOf(value));
+        sum.getAndAdd(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += buckets.get(i);
+        return total;
+    }
+
+    public long sum() {
+        return sum.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long mean() {
+        long n = count();
+        return n == 0 ? 0 : sum.get() / n;
+    }
+
+    /**
+     * 第 percentile 百分位的近似值，percentile 取值 0 ~ 100
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(bucketUpper(i), max.get());
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * 紧凑二进制格式：sum、max、非空桶数，随后每个非空桶写入 (下标增量, 计数)，整数均为 varint
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        long[] snapshot = new long[BUCKETS];
+        int nonEmpty = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            if (snapshot[i] != 0) nonEmpty++;
+        }
+        writeVarLong(out, sum.get());
+        writeVarLong(out, max.get());
+        writeVarLong(out, nonEmpty);
+        int last = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] == 0) continue;
+            writeVarLong(out, i - last);
+            writeVarLong(out, snapshot[i]);
+            last = i;
+        }
+    }
+
+    /**
+     * 读取 {@link #writeTo} 写出的数据，与当前内容合并
+     */
+    public void readFrom(DataInput in) throws IOException {
+        sum.getAndAdd(readVarLong(in));
+        long m = readVarLong(in);
+        if (m > max.get()) max.set(m);
+        long nonEmpty = readVarLong(in);
+        int index = 0;
+        for (long i = 0; i < nonEmpty; i++) {
+            index += (int) readVarLong(in);
+            if (index < 0 || index >= BUCKETS) throw new IOException("bucket out of range: " + index);
+            buckets.getAndAdd(index, readVarLong(in));
+        }
+    }
+
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("malformed varint");
+    }
+}
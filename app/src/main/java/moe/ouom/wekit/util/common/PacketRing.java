@@ -0,0 +1,182 @@
+package moe.ouom.wekit.util.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 定长的堆外环形抓包缓冲区
+ * 写满后覆盖最旧的记录；写入只做一次内存拷贝，不做 JSON 转换也不采集调用栈
+ * <p>
+ * 记录格式（大端）：
+ * <pre>
+ * int    recordLen   不含自身的记录长度
+ * long   timestamp   毫秒
+ * int    cgiId
+ * byte   direction   0 请求 / 1 回包
+ * short  uriLen
+ * byte[] uri         UTF-8
+ * byte[] payload     剩余部分，原始 protobuf（可带 4 字节包头）
+ * </pre>
+ * 导出文件为 {@link #MAGIC}、版本号加上按时间顺序排列的记录，可在桌面 JVM 上用 {@link #read} 读回
+ */
+public final class PacketRing {
+
+    public static final int MAGIC = 0x574B5043; // "WKPC"
+    public static final int VERSION = 1;
+
+    public static final byte DIR_REQUEST = 0;
+    public static final byte DIR_RESPONSE = 1;
+
+    private static final int HEADER = 4 + 8 + 4 + 1 + 2;
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    // 绝对位置，物理下标为 pos % capacity；head 为最旧记录的起点
+    private long head;
+    private long tail;
+    private long dropped;
+    private final Map<String, byte[]> uriCache = new HashMap<>();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER);
+
+    public PacketRing(int capacity) {
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * 写入一条记录，单条记录超过容量时丢弃并计数
+     */
+    public synchronized void append(long timestamp, int cgiId, byte direction, String uri, byte[] payload) {
+        byte[] uriBytes = uriCache.get(uri);
+        if (uriBytes == null) {
+            if (uriCache.size() >= 512) uriCache.clear();
+            uriBytes = uri.getBytes(StandardCharsets.UTF_8);
+            if (uriBytes.length > Short.MAX_VALUE) uriBytes = new byte[0];
+            uriCache.put(uri, uriBytes);
+        }
+        int len = HEADER + uriBytes.length + payload.length;
+        if (len > capacity) {
+            dropped++;
+            return;
+        }
+        while (tail + len - head > capacity) {
+            head += 4 + readInt(head);
+        }
+        header.clear();
+        header.putInt(len - 4).putLong(timestamp).putInt(cgiId).put(direction).putShort((short) uriBytes.length);
+        put(header.array(), HEADER);
+        put(uriBytes, uriBytes.length);
+        put(payload, payload.length);
+    }
+
+    private void put(byte[] src, int length) {
+        int pos = (int) (tail % capacity);
+        int first = Math.min(length, capacity - pos);
+        buffer.position(pos);
+        buffer.put(src, 0, first);
+        if (first < length) {
+            buffer.position(0);
+            buffer.put(src, first, length - first);
+        }
+        tail += length;
+    }
+
+    private int readInt(long at) {
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+            v = (v << 8) | (buffer.get((int) ((at + i) % capacity)) & 0xFF);
+        }
+        return v;
+    }
+
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    public synchronized long droppedCount() {
+        return dropped;
+    }
+
+    public synchronized void clear() {
+        head = tail = 0;
+        dropped = 0;
+    }
+
+    /**
+     * 在锁内拷贝出当前全部记录后写出，不阻塞写入方太久
+     */
+    public void export(OutputStream out) throws IOException {
+        byte[] body;
+        synchronized (this) {
+            body = new byte[(int) (tail - head)];
+            int pos = (int) (head % capacity);
+            int first = Math.min(body.length, capacity - pos);
+            ByteBuffer view = buffer.duplicate();
+            view.position(pos);
+            view.get(body, 0, first);
+            if (first < body.length) {
+                view.position(0);
+                view.get(body, first, body.length - first);
+            }
+        }
+        ByteBuffer fileHeader = ByteBuffer.allocate(5);
+        fileHeader.putInt(MAGIC).put((byte) VERSION);
+        out.write(fileHeader.array());
+        out.write(body);
+        out.flush();
+    }
+
+    public static final class Record {
+        public final long timestamp;
+        public final int cgiId;
+        public final boolean isRequest;
+        public final String uri;
+        public final byte[] payload;
+
+        Record(long timestamp, int cgiId, boolean isRequest, String uri, byte[] payload) {
+            this.timestamp = timestamp;
+            this.cgiId = cgiId;
+            this.isRequest = isRequest;
+            this.uri = uri;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 读取 {@link #export} 写出的文件，payload 可直接交给 WeProtoData.fromBytes 解析
+     */
+    public static List<Record> read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) throw new IOException("not a packet capture");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("unsupported capture version: " + version);
+        List<Record> out = new ArrayList<>();
+        while (true) {
+            int len;
+            try {
+                len = in.readInt();
+            } catch (EOFException e) {
+                return out;
+            }
+            long ts = in.readLong();
+            int cgiId = in.readInt();
+            byte dir = in.readByte();
+            byte[] uri = new byte[in.readUnsignedShort()];
+            in.readFully(uri);
+            int payloadLen = len - (HEADER - 4) - uri.length;
+            if (payloadLen < 0) throw new IOException("malformed record");
+            byte[] payload = new byte[payloadLen];
+            in.readFully(payload);
+            out.add(new Record(ts, cgiId, dir == DIR_REQUEST, new String(uri, StandardCharsets.UTF_8), payload));
+        }
+    }
+}
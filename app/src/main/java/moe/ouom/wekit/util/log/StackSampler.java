@@ -0,0 +1,200 @@
+package moe.ouom.wekit.util.log;
+
+import android.util.SparseIntArray;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import moe.ouom.wekit.config.WeConfig;
+import moe.ouom.wekit.constants.Constants;
+
+/**
+ * 详细日志的调用栈采样
+ * <p>
+ * 按键（cgiId 或表名）每 N 次采集一次调用栈；相同的调用点只保留一份并分配编号，
+ * 首次出现时输出完整调用栈，之后只输出编号，完整列表可通过 {@link #dump()} 查看；
+ * 热路径上使用 {@link #id(StackTraceElement[])} 只登记编号，调用栈文本留到查看时再生成
+ * <p>
+ * 采样率来自配置：{@link Constants#PrekStackSampleRate} 为默认的 N（0 表示不采集，未配置时为 {@link #DEFAULT_RATE}），
+ * {@link Constants#PrekStackSampleOverrides} 按 "522=1,message=0" 的格式为单个 cgiId / 表名单独指定
+ */
+public final class StackSampler {
+
+    private static final int MAX_CALL_SITES = 4096;
+
+    public static final int DEFAULT_RATE = 10;
+
+    private static final class CallSite {
+        final int id;
+        final StackTraceElement[] frames;
+        final AtomicInteger hits = new AtomicInteger();
+        volatile String rendered;
+
+        CallSite(int id, StackTraceElement[] frames) {
+            this.id = id;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * 按帧内容比较的查找键
+     */
+    private static final class Frames {
+        final StackTraceElement[] frames;
+        final int hash;
+
+        Frames(StackTraceElement[] frames) {
+            this.frames = frames;
+            this.hash = Arrays.hashCode(frames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Frames && ((Frames) o).hash == hash && Arrays.equals(((Frames) o).frames, frames);
+        }
+    }
+
+    private static final ConcurrentHashMap<Frames, CallSite> sites = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    // 按键的哈希分桶计数，不为每个键分配对象
+    private static final AtomicIntegerArray counters = new AtomicIntegerArray(256);
+
+    private static final class Overrides {
+        final String source;
+        final Map<String, Integer> byName = new HashMap<>();
+        final SparseIntArray byCgi = new SparseIntArray();
+
+        Overrides(String source) {
+            this.source = source;
+            if (source == null) return;
+            for (String part : source.split(",")) {
+                int eq = part.indexOf('=');
+                if (eq <= 0) continue;
+                String key = part.substring(0, eq).trim();
+                int rate;
+                try {
+                    rate = Integer.parseInt(part.substring(eq + 1).trim());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                byName.put(key, rate);
+                try {
+                    byCgi.put(Integer.parseInt(key), rate);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+    }
+
+    private static volatile Overrides sOverrides = new Overrides(null);
+
+    private StackSampler() {
+    }
+
+    private static Overrides overrides() {
+        String source = WeConfig.dGetString(Constants.PrekStackSampleOverrides, "");
+        Overrides current = sOverrides;
+        if (!Objects.equals(source, current.source)) {
+            current = new Overrides(source);
+            sOverrides = current;
+        }
+        return current;
+    }
+
+    private static int defaultRate() {
+        return WeConfig.dGetInt(Constants.PrekStackSampleRate, DEFAULT_RATE);
+    }
+
+    private static boolean hit(int bucket, int rate) {
+        if (rate <= 0) return false;
+        if (rate == 1) return true;
+        return counters.incrementAndGet(bucket & 0xFF) % rate == 0;
+    }
+
+    /**
+     * 当前这次调用是否需要采集调用栈
+     */
+    public static boolean shouldSample(int cgiId) {
+        int rate = overrides().byCgi.get(cgiId, Integer.MIN_VALUE);
+        return hit(cgiId, rate != Integer.MIN_VALUE ? rate : defaultRate());
+    }
+
+    public static boolean shouldSample(@NonNull String table) {
+        Integer rate = overrides().byName.get(table);
+        return hit(table.hashCode(), rate != null ? rate : defaultRate());
+    }
+
+    private static CallSite intern(@NonNull StackTraceElement[] frames) {
+        Frames key = new Frames(frames);
+        CallSite site = sites.get(key);
+        if (site == null) {
+            if (sites.size() >= MAX_CALL_SITES) return null;
+            CallSite created = new CallSite(nextId.getAndIncrement(), frames);
+            site = sites.putIfAbsent(key, created);
+            if (site == null) site = created;
+        }
+        site.hits.incrementAndGet();
+        return site;
+    }
+
+    /**
+     * 登记一次调用栈并返回用于日志的文本：首次出现的调用点附带完整调用栈，之后只有编号
+     */
+    @NonNull
+    public static String format(@NonNull StackTraceElement[] frames) {
+        CallSite site = intern(frames);
+        if (site == null) return WeLogger.getStackTraceString(frames);
+        if (site.rendered != null) return "#" + site.id;
+        String rendered;
+        synchronized (site) {
+            if (site.rendered != null) return "#" + site.id;
+            rendered = WeLogger.getStackTraceString(site.frames);
+            site.rendered = rendered;
+        }
+        return "#" + site.id + rendered;
+    }
+
+    /**
+     * 登记一次调用栈并只返回编号，不生成调用栈文本，供插入数据库等宿主线程上的热路径使用
+     * 调用点数量达到上限时返回 "-"
+     */
+    @NonNull
+    public static String id(@NonNull StackTraceElement[] frames) {
+        CallSite site = intern(frames);
+        return site != null ? "#" + site.id : "-";
+    }
+
+    /**
+     * 按命中次数列出全部调用点
+     */
+    @NonNull
+    public static String dump() {
+        List<CallSite> list = new ArrayList<>(sites.values());
+        list.sort((a, b) -> Integer.compare(b.hits.get(), a.hits.get()));
+        StringBuilder sb = new StringBuilder();
+        for (CallSite site : list) {
+            String rendered = site.rendered;
+            if (rendered == null) rendered = WeLogger.getStackTraceString(site.frames);
+            sb.append('#').append(site.id).append(" hits=").append(site.hits.get()).append(rendered).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static void clear() {
+        sites.clear();
+    }
+}
@@ -334,11 +334,17 @@ public class WeLogger {
         e(TAG, android.util.Log.getStackTraceString(th));
     }
 
-    @SuppressLint("DefaultLocale")
     @NonNull
     public static String getStackTraceString() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
+        return getStackTraceString(Thread.currentThread().getStackTrace());
+    }
 
+    /**
+     * 格式化事先采集的调用栈，便于在热路径上只采集、在后台线程再格式化
+     */
+    @SuppressLint("DefaultLocale")
+    @NonNull
+    public static String getStackTraceString(@NonNull StackTraceElement[] stackTrace) {
         StringBuilder stackTraceMsg = new StringBuilder().append("\n");
         boolean startRecording = false;
 
@@ -5,22 +5,28 @@ import android.content.Context
 import android.os.Handler
 import android.os.Looper
 import moe.ouom.wekit.util.log.WeLogger
+import org.mozilla.javascript.ContextFactory
+import org.mozilla.javascript.ImporterTopLevel
+import org.mozilla.javascript.Script
 import org.mozilla.javascript.ScriptRuntime
 import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import org.mozilla.javascript.Undefined
+import org.mozilla.javascript.Context as RhinoContext
 import java.text.MessageFormat
 import java.util.Locale
 import java.util.ResourceBundle
 import java.util.MissingResourceException
-import javax.script.ScriptEngine
-import javax.script.ScriptEngineManager
 
 /**
  * Rhino JavaScript执行器
+ * 可在任意线程并发使用：每个线程进入自己的 Context，所有作用域以同一个封存的顶层作用域为原型，
+ * 编译结果与作用域无关，可在线程间共享
  */
 class JsExecutor private constructor() {
-    private var mRhinoContext: Context? = null
-    private var mScope: Scriptable? = null
-    private var mScriptEngine: ScriptEngine? = null
+    // 脚本共享的顶层作用域，只含标准对象与 wekit 日志接口，创建后封存
+    @Volatile
+    private var mSharedScope: ScriptableObject? = null
     private val mMainHandler = Handler(Looper.getMainLooper())
     private var mInitialized = false
     private var mAppContext: Context? = null
@@ -29,6 +35,15 @@ class JsExecutor private constructor() {
         @Volatile
         private var INSTANCE: JsExecutor? = null
 
+        // Android 上无法生成字节码，本工厂创建的 Context 一律使用解释模式
+        // 语言版本与此前使用的 javax.script Rhino 引擎一致，脚本中的 let / const 等语法照常可用
+        private val contextFactory = object : ContextFactory() {
+            override fun makeContext(): RhinoContext = super.makeContext().apply {
+                optimizationLevel = -1
+                languageVersion = RhinoContext.VERSION_1_8
+            }
+        }
+
         @JvmStatic
         fun getInstance(): JsExecutor {
             return INSTANCE ?: synchronized(this) {
@@ -115,16 +130,7 @@ class JsExecutor private constructor() {
 
         try {
             val context = mAppContext ?: throw IllegalStateException("ApplicationContext not set")
-            // 获取模块 ClassLoader
-            val moduleClassLoader = this.javaClass.classLoader
-            // 使用模块 ClassLoader 加载
-            val engineManager = ScriptEngineManager(moduleClassLoader)
-
-            val rhinoEngine = engineManager.getEngineByName("rhino")
-
-            mScriptEngine = rhinoEngine
-            // 注入日志接口
-            injectLoggingInterface()
+            mSharedScope = createSharedScope()
             mInitialized = true
             WeLogger.i("JsExecutor initialized with Rhino")
 
@@ -133,13 +139,52 @@ class JsExecutor private constructor() {
 
         } catch (e: Exception) {
             WeLogger.e("Rhino init failed: ${e.message}")
-            mRhinoContext = null
-            mScope = null
-            mScriptEngine = null
+            mSharedScope = null
             mAppContext = null
         }
     }
 
+    private fun createSharedScope(): ScriptableObject = withContext { cx ->
+        // ImporterTopLevel 提供 JavaImporter，importPackage / importClass 由各实例的 ScriptScope 提供
+        val scope = ImporterTopLevel(cx, true)
+        ScriptableObject.putProperty(scope, "wekit", RhinoContext.javaToJS(LogBridge, scope))
+        // 标准对象默认延迟初始化，首次访问时会写入作用域；封存前全部触发一次，之后多线程只读
+        for (id in scope.allIds) {
+            if (id is String) ScriptableObject.getProperty(scope, id)
+        }
+        scope.sealObject()
+        scope
+    }
+
+    /**
+     * 在当前线程进入 Rhino Context 执行 block，可嵌套调用
+     */
+    fun <T> withContext(block: (RhinoContext) -> T): T {
+        val cx = contextFactory.enterContext()
+        try {
+            return block(cx)
+        } finally {
+            RhinoContext.exit()
+        }
+    }
+
+    /**
+     * 编译脚本，编译结果与作用域无关，可重复执行
+     */
+    fun compile(source: String, name: String): Script = withContext { cx ->
+        cx.compileString(source, name, 1, null)
+    }
+
+    /**
+     * 共享的顶层作用域，已封存，只能用来创建对象
+     */
+    fun sharedScope(): Scriptable = mSharedScope ?: throw IllegalStateException("Rhino engine not ready")
+
+    /**
+     * 创建一个以共享顶层作用域为原型的独立作用域，脚本的全局变量与函数定义在其中
+     */
+    fun newScope(): Scriptable = ScriptScope(sharedScope())
+
     /**
      * 初始化相关的管理器
      */
@@ -165,28 +210,18 @@ class JsExecutor private constructor() {
     }
 
     /**
-     * 注入日志接口
+     * 暴露给脚本的 wekit 对象
      */
-    @Suppress("unused")
-    private fun injectLoggingInterface() {
-        try {
-            // 为 ScriptEngine 添加日志接口
-            mScriptEngine?.put("wekit", object {
-                fun log(vararg args: Any?) {
-                    val message = args.joinToString(" ") { it?.toString() ?: "null" }
-                    ScriptLogger.getInstance().info(message)
-                }
-            })
-
-            WeLogger.i("JsExecutor: Injected Rhino logging interface")
-
-        } catch (e: Exception) {
-            WeLogger.e("Failed to inject logging interface: ${e.message}")
+    object LogBridge {
+        fun log(vararg args: Any?) {
+            val message = args.joinToString(" ") { it?.toString() ?: "null" }
+            ScriptLogger.getInstance().info(message)
         }
     }
 
     /**
      * 执行 JavaScript 并返回结果（同步）
+     * 每次在新的独立作用域中执行，不同调用之间互不影响
      */
     fun executeJs(jsCode: String): String? {
         if (!mInitialized) {
@@ -195,8 +230,10 @@ class JsExecutor private constructor() {
         }
 
         return try {
-            val result = mScriptEngine?.eval(jsCode)?.toString()
-            result
+            withContext { cx ->
+                val result = cx.evaluateString(newScope(), jsCode, "executeJs", 1, null)
+                if (result == null || result is Undefined) null else RhinoContext.toString(result)
+            }
         } catch (e: Exception) {
             WeLogger.e("JS exec error: ${e.message}", e)
             e.message
@@ -215,9 +252,7 @@ class JsExecutor private constructor() {
      */
     fun close() {
         mMainHandler.post {
-            mRhinoContext = null
-            mScope = null
-            mScriptEngine = null
+            mSharedScope = null
             mInitialized = false
         }
     }
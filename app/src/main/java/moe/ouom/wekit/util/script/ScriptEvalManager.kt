@@ -1,7 +1,16 @@
 package moe.ouom.wekit.util.script
 
 import moe.ouom.wekit.util.log.WeLogger
-import org.json.JSONObject
+import moe.ouom.wekit.util.WeProtoData
+import org.mozilla.javascript.Function
+import org.mozilla.javascript.RhinoException
+import org.mozilla.javascript.Script
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.atomic.AtomicInteger
+import org.mozilla.javascript.Context as RhinoContext
 
 /**
  * JavaScript脚本执行管理器
@@ -19,12 +28,55 @@ class ScriptEvalManager private constructor() {
                 instance ?: ScriptEvalManager().also { instance = it }
             }
         }
+
+        // 每个脚本最多存在的执行实例数，全部占用时等待其他线程归还
+        private val MAX_INSTANCES = Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
     }
 
     private lateinit var jsExecutor: JsExecutor
     private lateinit var scriptFileManager: ScriptFileManager
     private var isInitialized = false
 
+    /**
+     * 脚本的一个执行实例：在独立作用域中运行过顶层代码，同一时刻只由一个线程使用
+     */
+    private class ScriptInstance(val scope: Scriptable, val onRequest: Function?, val onResponse: Function?) {
+        fun function(methodName: String) = if (methodName == "onRequest") onRequest else onResponse
+    }
+
+    /**
+     * 编译后的脚本，program 在线程间共享；执行实例按需创建、用完归还，数量不超过 [MAX_INSTANCES]
+     * 不同线程可同时执行同一脚本，各实例的全局变量互不可见
+     * source 为编译时对应的配置快照，快照未替换时不必重新比较内容
+     */
+    private class CompiledScript(
+        val source: ScriptFileManager.ScriptConfig,
+        val program: Script?,
+        val hasOnRequest: Boolean,
+        val hasOnResponse: Boolean,
+        val filter: ScriptFilter,
+        val idle: LinkedBlockingQueue<ScriptInstance> = LinkedBlockingQueue(),
+        val created: AtomicInteger = AtomicInteger()
+    ) {
+        fun handles(methodName: String) = if (methodName == "onRequest") hasOnRequest else hasOnResponse
+
+        /**
+         * 脚本内容与过滤配置是否与编译时一致，名称、顺序等其他字段的变化不需要重新编译
+         */
+        fun sameCode(script: ScriptFileManager.ScriptConfig) =
+            script.content == source.content && script.cgiIds == source.cgiIds && script.uriFilter == source.uriFilter
+
+        fun withSource(script: ScriptFileManager.ScriptConfig) =
+            CompiledScript(script, program, hasOnRequest, hasOnResponse, filter, idle, created)
+    }
+
+    // 脚本 id -> 编译结果；内容或过滤配置变化时失效，编译失败的脚本也会缓存（不含 program），直到内容再次变化
+    private val compiled = ConcurrentHashMap<String, CompiledScript>()
+    // 脚本 id -> 编译锁，一个脚本编译较慢时不影响其他脚本首次使用
+    private val compileLocks = ConcurrentHashMap<String, Any>()
+    @Volatile
+    private var compiledVersion = -1
+
     /**
      * 初始化脚本执行管理器
      */
@@ -145,111 +197,184 @@ class ScriptEvalManager private constructor() {
     }
 
     /**
-     * 执行所有启用脚本的onRequest方法
+     * 是否有启用的脚本需要处理该请求，为 false 时不会解析数据包
+     */
+    fun wantsRequest(uri: String, cgiId: Int) = wants("onRequest", uri, cgiId)
+
+    /**
+     * 是否有启用的脚本需要处理该回包
+     */
+    fun wantsResponse(uri: String, cgiId: Int) = wants("onResponse", uri, cgiId)
+
+    private fun wants(methodName: String, uri: String, cgiId: Int): Boolean {
+        if (!isInitialized) return false
+        val enabledScripts = scriptFileManager.getEnabledScripts()
+        if (enabledScripts.isEmpty()) return false
+        pruneCompiled(enabledScripts)
+        return enabledScripts.any { script ->
+            val compiledScript = compiledScript(script)
+            compiledScript.handles(methodName) && compiledScript.filter.matches(uri, cgiId)
+        }
+    }
+
+    /**
+     * 执行所有启用脚本的onRequest方法，脚本对 jsonData 的修改直接写回 data() 返回的解析结果
+     * @return 是否有脚本修改了数据包
      */
-    fun executeOnRequest(uri: String, cgiId: Int, requestJson: JSONObject): JSONObject? {
+    fun executeOnRequest(uri: String, cgiId: Int, data: () -> WeProtoData): Boolean {
         checkInitialized()
-        return executeAllScripts("onRequest", uri, cgiId, requestJson)
+        return executeAllScripts("onRequest", uri, cgiId, data)
     }
 
     /**
      * 执行所有启用脚本的onResponse方法
      */
-    fun executeOnResponse(uri: String, cgiId: Int, responseJson: JSONObject): JSONObject? {
+    fun executeOnResponse(uri: String, cgiId: Int, data: () -> WeProtoData): Boolean {
         checkInitialized()
-        return executeAllScripts("onResponse", uri, cgiId, responseJson)
+        return executeAllScripts("onResponse", uri, cgiId, data)
     }
 
     /**
      * 执行所有脚本的指定方法
+     * 所有脚本共享同一个 ScriptPacket，前一个脚本的修改对后一个脚本可见，全部执行完后统一写回
+     * 可在多个网络线程上并发调用，每个线程各自进入 Rhino Context 并取用独立的脚本实例
      */
-    private fun executeAllScripts(methodName: String, uri: String, cgiId: Int, jsonData: JSONObject): JSONObject? {
+    private fun executeAllScripts(methodName: String, uri: String, cgiId: Int, data: () -> WeProtoData): Boolean {
         checkInitialized()
 
         val enabledScripts = scriptFileManager.getEnabledScripts()
-        if (enabledScripts.isEmpty()) return null
-
-        var currentData = jsonData
-        var modified = false
-
-        enabledScripts.sortedBy { it.order }.forEach { script ->
-            if (hasMethod(script.content, methodName)) {
-                val result = executeScriptMethod(script, methodName, uri, cgiId, currentData)
-                if (result != null) {
-                    try {
-                        currentData = JSONObject(result)
-                        modified = true
-                        WeLogger.d("[ScriptEvalManager] 脚本 ${script.name}.$methodName 执行成功")
-                    } catch (e: Exception) {
-                        WeLogger.e("[ScriptEvalManager] 解析脚本 ${script.name}.$methodName 结果失败", e)
-                    }
+        if (enabledScripts.isEmpty()) return false
+        pruneCompiled(enabledScripts)
+
+        return jsExecutor.withContext { cx ->
+            val packet = ScriptPacket(uri, cgiId, data, jsExecutor.sharedScope())
+            enabledScripts.forEach { script ->
+                val compiledScript = compiledScript(script)
+                if (!compiledScript.handles(methodName) || !compiledScript.filter.matches(uri, cgiId)) return@forEach
+                executeScriptMethod(cx, script, compiledScript, methodName, packet)
+            }
+            val modified = packet.modified()
+            if (modified) WeLogger.d("[ScriptEvalManager] 脚本修改了 $uri ($cgiId) 的 $methodName 数据")
+            modified
+        }
+    }
+
+    /**
+     * 脚本列表变化后丢弃已删除或已停用脚本的编译结果
+     */
+    private fun pruneCompiled(enabledScripts: List<ScriptFileManager.ScriptConfig>) {
+        val version = scriptFileManager.getVersion()
+        if (version == compiledVersion) return
+        compiledVersion = version
+        val ids = enabledScripts.mapTo(HashSet()) { it.id }
+        compiled.keys.retainAll(ids)
+        compileLocks.keys.retainAll(ids)
+    }
+
+    /**
+     * 取得脚本的编译结果，内容未变化时直接复用
+     * 配置中声明了 cgiIds / uriFilter 时以配置为准，否则使用脚本顶层导出的 filter 对象
+     */
+    private fun compiledScript(script: ScriptFileManager.ScriptConfig): CompiledScript {
+        val cachedScript = compiled[script.id]
+        if (cachedScript != null && cachedScript.source === script) return cachedScript
+        if (cachedScript != null && cachedScript.sameCode(script)) {
+            return cachedScript.withSource(script).also { compiled[script.id] = it }
+        }
+        synchronized(compileLocks.getOrPut(script.id) { Any() }) {
+            // 其他线程可能已经编译完成
+            compiled[script.id]?.let { if (it.sameCode(script)) return it }
+            val result = compile(script)
+            compiled[script.id] = result
+            return result
+        }
+    }
+
+    /**
+     * 编译脚本并创建第一个执行实例，用来确定脚本定义了哪些方法以及导出的 filter
+     */
+    private fun compile(script: ScriptFileManager.ScriptConfig): CompiledScript {
+        val configFilter = ScriptFilter.of(script.cgiIds, script.uriFilter, script.name)
+        return try {
+            ScriptLogger.getInstance().setScriptName(script.name)
+            jsExecutor.withContext { cx ->
+                val program = jsExecutor.compile(script.content, script.name)
+                val first = newInstance(cx, program)
+                CompiledScript(
+                    script,
+                    program,
+                    first.onRequest != null,
+                    first.onResponse != null,
+                    if (configFilter.isEmpty()) ScriptFilter.fromScope(first.scope, script.name) else configFilter
+                ).also {
+                    it.created.set(1)
+                    it.idle.offer(first)
                 }
             }
+        } catch (e: Exception) {
+            WeLogger.e("[ScriptEvalManager] 编译脚本 ${script.name} 失败", e)
+            ScriptLogger.getInstance().info("[Script:${script.name} Error] ${e.message}")
+            CompiledScript(script, null, false, false, configFilter)
+        } finally {
+            ScriptLogger.getInstance().resetScriptName()
         }
+    }
 
-        return if (modified) currentData else null
+    private fun newInstance(cx: RhinoContext, program: Script): ScriptInstance {
+        val scope = jsExecutor.newScope()
+        program.exec(cx, scope)
+        return ScriptInstance(
+            scope,
+            ScriptableObject.getProperty(scope, "onRequest") as? Function,
+            ScriptableObject.getProperty(scope, "onResponse") as? Function
+        )
+    }
+
+    /**
+     * 取用一个空闲实例，没有空闲实例且未达上限时新建，否则等待其他线程归还
+     * 脚本顶层代码只在创建实例时运行，实例总数与内存受 [MAX_INSTANCES] 限制；
+     * 等待期间该脚本的调用按实例串行执行，不会跳过脚本
+     */
+    private fun acquire(cx: RhinoContext, compiledScript: CompiledScript): ScriptInstance? {
+        compiledScript.idle.poll()?.let { return it }
+        val program = compiledScript.program ?: return null
+        if (compiledScript.created.incrementAndGet() > MAX_INSTANCES) {
+            compiledScript.created.decrementAndGet()
+            return compiledScript.idle.take()
+        }
+        try {
+            return newInstance(cx, program)
+        } catch (e: Exception) {
+            compiledScript.created.decrementAndGet()
+            throw e
+        }
     }
 
     /**
      * 执行单个脚本的方法
+     * 脚本直接修改 data.jsonData 即可；返回一个对象时视为新的 jsonData
      */
     private fun executeScriptMethod(
+        cx: RhinoContext,
         script: ScriptFileManager.ScriptConfig,
+        compiledScript: CompiledScript,
         methodName: String,
-        uri: String,
-        cgiId: Int,
-        jsonData: JSONObject
-    ): String? {
+        packet: ScriptPacket
+    ) {
         val scriptName = script.name
-        val scriptContent = script.content
-
-        val jsCode = """
-            (function() {
-                try {
-                    // 执行脚本内容
-                    $scriptContent
-                    
-                    // 创建包含所有参数的对象
-                    const data = {
-                        uri: '$uri',
-                        cgiId: $cgiId,
-                        jsonData: $jsonData
-                    };
-                    
-                    // 调用指定方法
-                    const result = $methodName(data);
-                    
-                    // 返回结果
-                    if (result === undefined || result === null) {
-                        return null;
-                    }
-                    
-                    if (typeof result === 'object') {
-                        return JSON.stringify(result);
-                    } else if (typeof result === 'string') {
-                        try {
-                            JSON.parse(result);
-                            return result;
-                        } catch(e) {
-                            return JSON.stringify({value: result});
-                        }
-                    } else {
-                        return JSON.stringify({value: result});
-                    }
-                } catch(error) {
-                    wekit.log('[Script:${scriptName} Error] ' + error.message);
-                    return null;
-                }
-            })();
-        """.trimIndent()
-
-        return try {
+        var instance: ScriptInstance? = null
+        try {
             ScriptLogger.getInstance().setScriptName(scriptName)
-            jsExecutor.executeJs(jsCode)
+            instance = acquire(cx, compiledScript) ?: return
+            val function = instance.function(methodName) ?: return
+            val result = function.call(cx, instance.scope, instance.scope, arrayOf(packet))
+            if (result is Scriptable && result !== packet) packet.replaceJsonData(result)
+        } catch (e: RhinoException) {
+            ScriptLogger.getInstance().info("[Script:$scriptName Error] ${e.details()}")
         } catch (e: Exception) {
             WeLogger.e("[ScriptEvalManager] 执行脚本 ${scriptName}.$methodName 失败", e)
-            null
         } finally {
+            instance?.let { compiledScript.idle.offer(it) }
             ScriptLogger.getInstance().resetScriptName()
         }
     }
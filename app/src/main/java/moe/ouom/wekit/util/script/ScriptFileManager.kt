@@ -1,7 +1,9 @@
 package moe.ouom.wekit.util.script
 
 import android.content.Context
+import android.os.FileObserver
 import moe.ouom.wekit.util.log.WeLogger
+import org.json.JSONArray
 import org.json.JSONObject
 import java.io.File
 import java.io.FileWriter
@@ -35,7 +37,11 @@ class ScriptFileManager private constructor() {
         var order: Int = 0,
         var createdTime: Long = System.currentTimeMillis(),
         var modifiedTime: Long = System.currentTimeMillis(),
-        var description: String = ""
+        var description: String = "",
+        // 只处理这些 cgiId 的数据包，为空表示不限
+        var cgiIds: List<Int> = emptyList(),
+        // 只处理 uri 匹配该正则的数据包，为空表示不限
+        var uriFilter: String = ""
     ) {
         fun toJson(): JSONObject {
             return JSONObject().apply {
@@ -47,6 +53,8 @@ class ScriptFileManager private constructor() {
                 put("createdTime", createdTime)
                 put("modifiedTime", modifiedTime)
                 put("description", description)
+                put("cgiIds", JSONArray(cgiIds))
+                put("uriFilter", uriFilter)
             }
         }
 
@@ -60,7 +68,10 @@ class ScriptFileManager private constructor() {
                     order = json.optInt("order", 0),
                     createdTime = json.optLong("createdTime", System.currentTimeMillis()),
                     modifiedTime = json.optLong("modifiedTime", System.currentTimeMillis()),
-                    description = json.optString("description", "")
+                    description = json.optString("description", ""),
+                    cgiIds = json.optJSONArray("cgiIds")?.let { arr -> List(arr.length()) { arr.optInt(it) } }
+                        ?: emptyList(),
+                    uriFilter = json.optString("uriFilter", "")
                 )
             }
         }
@@ -69,6 +80,19 @@ class ScriptFileManager private constructor() {
     private lateinit var scriptDir: File
     private var isInitialized = false
 
+    /**
+     * 内存中的脚本快照，已按 order 排序，整体替换不做原地修改
+     */
+    private class Snapshot(val all: List<ScriptConfig>, val version: Int) {
+        val enabled: List<ScriptConfig> = all.filter { it.enabled }
+    }
+
+    @Volatile
+    private var snapshot = Snapshot(emptyList(), 0)
+
+    // 目录外部变化（手动拷贝、其他进程写入）时重新加载快照，需持有引用防止被回收
+    private var observer: FileObserver? = null
+
 
     /**
      * 初始化脚本文件管理器
@@ -84,6 +108,8 @@ class ScriptFileManager private constructor() {
             scriptDir = File(applicationContext.getFilesDir().parentFile, SCRIPT_DIR)
             ensureScriptDirExists()
             isInitialized = true
+            reload()
+            startWatching()
             WeLogger.i("[ScriptFileManager] 初始化成功: ${scriptDir.absolutePath}")
         } catch (e: Exception) {
             WeLogger.e("[ScriptFileManager] 初始化失败", e)
@@ -113,6 +139,50 @@ class ScriptFileManager private constructor() {
         }
     }
 
+    private fun startWatching() {
+        val mask = FileObserver.CLOSE_WRITE or FileObserver.DELETE or FileObserver.MOVED_TO or FileObserver.MOVED_FROM
+        observer = object : FileObserver(scriptDir, mask) {
+            override fun onEvent(event: Int, path: String?) {
+                if (path == null || !path.endsWith(SCRIPT_SUFFIX)) return
+                reload()
+            }
+        }.also { it.startWatching() }
+    }
+
+    /**
+     * 从磁盘重新读取全部脚本并替换快照
+     */
+    @Synchronized
+    fun reload() {
+        val next = readScriptsFromDisk()
+        snapshot = Snapshot(next, snapshot.version + 1)
+    }
+
+    private fun readScriptsFromDisk(): List<ScriptConfig> {
+        ensureScriptDirExists()
+
+        val scripts = mutableListOf<ScriptConfig>()
+
+        scriptDir.listFiles { _, name ->
+            name.endsWith(SCRIPT_SUFFIX)
+        }?.forEach { file ->
+            try {
+                val jsonString = file.readText()
+                val json = JSONObject(jsonString)
+                scripts.add(ScriptConfig.fromJson(json))
+            } catch (e: Exception) {
+                WeLogger.e("[ScriptFileManager] 读取脚本文件失败: ${file.name}", e)
+            }
+        }
+
+        return scripts.sortedBy { it.order }
+    }
+
+    /**
+     * 快照版本号，脚本增删改后递增，供调用方判断缓存是否过期
+     */
+    fun getVersion(): Int = snapshot.version
+
     /**
      * 保存脚本
      */
@@ -129,6 +199,7 @@ class ScriptFileManager private constructor() {
                 writer.write(json.toString())
                 writer.flush()
             }
+            reload()
 
             WeLogger.d("[ScriptFileManager] 脚本已保存: ${script.name}")
             true
@@ -140,27 +211,12 @@ class ScriptFileManager private constructor() {
 
     /**
      * 获取所有脚本
+     * 返回快照中各脚本的副本，调用方修改后需通过 saveScript 保存
      */
     fun getAllScripts(): List<ScriptConfig> {
         checkInitialized()
 
-        ensureScriptDirExists()
-
-        val scripts = mutableListOf<ScriptConfig>()
-
-        scriptDir.listFiles { _, name ->
-            name.endsWith(SCRIPT_SUFFIX)
-        }?.forEach { file ->
-            try {
-                val jsonString = file.readText()
-                val json = JSONObject(jsonString)
-                scripts.add(ScriptConfig.fromJson(json))
-            } catch (e: Exception) {
-                WeLogger.e("[ScriptFileManager] 读取脚本文件失败: ${file.name}", e)
-            }
-        }
-
-        return scripts.sortedBy { it.order }
+        return snapshot.all.map { it.copy() }
     }
 
     /**
@@ -169,17 +225,7 @@ class ScriptFileManager private constructor() {
     fun getScriptById(id: String): ScriptConfig? {
         checkInitialized()
 
-        val scriptFile = File(scriptDir, "$id$SCRIPT_SUFFIX")
-        if (!scriptFile.exists()) return null
-
-        return try {
-            val jsonString = scriptFile.readText()
-            val json = JSONObject(jsonString)
-            ScriptConfig.fromJson(json)
-        } catch (e: Exception) {
-            WeLogger.e("[ScriptFileManager] 读取脚本失败: $id", e)
-            null
-        }
+        return snapshot.all.firstOrNull { it.id == id }?.copy()
     }
 
     /**
@@ -192,6 +238,7 @@ class ScriptFileManager private constructor() {
         return if (scriptFile.exists()) {
             val success = scriptFile.delete()
             if (success) {
+                reload()
                 WeLogger.i("[ScriptFileManager] 脚本已删除: $id")
             }
             success
@@ -215,17 +262,19 @@ class ScriptFileManager private constructor() {
             }
         }
 
+        reload()
         WeLogger.i("[ScriptFileManager] 已删除 $count 个脚本")
         return count
     }
 
     /**
-     * 获取启用状态的脚本
+     * 获取启用状态的脚本，已按 order 排序
+     * 直接返回快照中的列表，供数据包处理路径使用，不做磁盘读取也不复制，调用方不得修改
      */
     fun getEnabledScripts(): List<ScriptConfig> {
         checkInitialized()
 
-        return getAllScripts().filter { it.enabled }
+        return snapshot.enabled
     }
 
     /**
@@ -234,7 +283,7 @@ class ScriptFileManager private constructor() {
     fun getScriptCount(): Int {
         checkInitialized()
 
-        return getAllScripts().size
+        return snapshot.all.size
     }
 
     /**
@@ -0,0 +1,53 @@
+package moe.ouom.wekit.util.script
+
+import moe.ouom.wekit.util.log.WeLogger
+import org.mozilla.javascript.NativeArray
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+
+/**
+ * 脚本声明关心的数据包范围，cgiIds 为空表示所有 cgiId，uri 为空表示所有 uri
+ * 不匹配的数据包不会交给脚本，所有启用脚本都不匹配时数据包也不会被解析
+ */
+class ScriptFilter(private val cgiIds: IntArray, private val uri: Regex?) {
+
+    fun isEmpty() = cgiIds.isEmpty() && uri == null
+
+    fun matches(uri: String, cgiId: Int): Boolean =
+        (cgiIds.isEmpty() || cgiId in cgiIds) && (this.uri == null || this.uri.containsMatchIn(uri))
+
+    companion object {
+        @JvmField
+        val ALL = ScriptFilter(IntArray(0), null)
+
+        /**
+         * 由脚本配置中的 cgiIds / uriFilter 字段构造
+         */
+        fun of(cgiIds: List<Int>, uriPattern: String, scriptName: String): ScriptFilter =
+            ScriptFilter(cgiIds.distinct().toIntArray(), parseUri(uriPattern, scriptName))
+
+        /**
+         * 读取脚本顶层声明的 filter 对象，例如 var filter = { cgiIds: [522], uri: 'newsendmsg' }
+         */
+        fun fromScope(scope: Scriptable, scriptName: String): ScriptFilter {
+            val filter = ScriptableObject.getProperty(scope, "filter") as? Scriptable ?: return ALL
+            val ids = when (val value = ScriptableObject.getProperty(filter, "cgiIds")) {
+                is NativeArray -> value.mapNotNull { (it as? Number)?.toInt() }
+                is Number -> listOf(value.toInt())
+                else -> emptyList()
+            }
+            val uri = ScriptableObject.getProperty(filter, "uri") as? CharSequence
+            return of(ids, uri?.toString() ?: "", scriptName)
+        }
+
+        private fun parseUri(pattern: String, scriptName: String): Regex? {
+            if (pattern.isBlank()) return null
+            return try {
+                Regex(pattern)
+            } catch (e: Exception) {
+                WeLogger.w("[ScriptFilter] 脚本 $scriptName 的 uri 过滤规则无效: $pattern")
+                null
+            }
+        }
+    }
+}
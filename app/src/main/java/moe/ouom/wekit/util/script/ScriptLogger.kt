@@ -23,7 +23,8 @@ class ScriptLogger {
     }
 
     private val defaultScriptName = "未知"
-    private var scriptName: String = defaultScriptName
+    // 脚本可能在多个线程上同时执行，当前脚本名按线程记录
+    private val scriptName = ThreadLocal<String>()
     // 日志条目
     data class LogEntry(
         val id: String = UUID.randomUUID().toString(),
@@ -58,21 +59,21 @@ class ScriptLogger {
      * 设置脚本名称
      */
     fun setScriptName(scriptName: String) {
-        this.scriptName = scriptName
+        this.scriptName.set(scriptName)
     }
 
     /**
      * 获取脚本名称
      */
     fun getScriptName(): String {
-        return this.scriptName
+        return this.scriptName.get() ?: defaultScriptName
     }
 
     /**
      * 恢复默认脚本名称
      */
     fun resetScriptName() {
-        this.scriptName = defaultScriptName
+        this.scriptName.remove()
     }
 
     /**
@@ -83,12 +84,17 @@ class ScriptLogger {
             return
         }
 
-        // 添加到列表开头（最新的在前面）
-        logEntries.add(0, entry)
+        // 多个线程可能同时写入，插入与清理需作为一个整体执行
+        synchronized(logEntries) {
+            // 添加到列表开头（最新的在前面）
+            logEntries.add(0, entry)
 
-        // 自动清理
-        if (config.autoPrune && logEntries.size > config.maxEntries) {
-            logEntries.removeAt(logEntries.size - 1)
+            // 自动清理
+            if (config.autoPrune) {
+                while (logEntries.size > config.maxEntries) {
+                    logEntries.removeAt(logEntries.size - 1)
+                }
+            }
         }
 
         // 输出到系统日志
@@ -105,17 +111,17 @@ class ScriptLogger {
 
     fun info(message: String) {
         if (!isInitialized) initialize()
-        addLogInternal(LogEntry(level = "INFO", message = message, entryScriptName = scriptName))
+        addLogInternal(LogEntry(level = "INFO", message = message, entryScriptName = getScriptName()))
     }
 
     fun warn(message: String) {
         if (!isInitialized) initialize()
-        addLogInternal(LogEntry(level = "WARN", message = message, entryScriptName = scriptName))
+        addLogInternal(LogEntry(level = "WARN", message = message, entryScriptName = getScriptName()))
     }
 
     fun error(message: String) {
         if (!isInitialized) initialize()
-        addLogInternal(LogEntry(level = "ERROR", message = message, entryScriptName = scriptName))
+        addLogInternal(LogEntry(level = "ERROR", message = message, entryScriptName = getScriptName()))
     }
 
     // 查询方法
@@ -131,7 +137,9 @@ class ScriptLogger {
     }
 
     fun clearAll() {
-        logEntries.clear()
+        synchronized(logEntries) {
+            logEntries.clear()
+        }
         WeLogger.i("ScriptLogger", "All logs cleared")
     }
 
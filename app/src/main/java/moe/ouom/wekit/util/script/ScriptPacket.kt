@@ -0,0 +1,231 @@
+package moe.ouom.wekit.util.script
+
+import moe.ouom.wekit.util.WeProtoData
+import org.json.JSONArray
+import org.json.JSONObject
+import org.mozilla.javascript.BaseFunction
+import org.mozilla.javascript.NativeArray
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import org.mozilla.javascript.Undefined
+import org.mozilla.javascript.Wrapper
+import kotlin.math.abs
+import kotlin.math.floor
+import org.mozilla.javascript.Context as RhinoContext
+
+/**
+ * 作为 data 参数交给脚本的数据包对象，同一个数据包按顺序传给所有脚本
+ * uri 与 cgiId 只读；jsonData 是直接建立在 WeProtoData 上的视图，按字段号读取时只解码被访问的字段，
+ * 赋值与删除立即写入 WeProtoData，序列化时只有改动过的子消息会重新编码
+ * <p>
+ * 整数以 java.lang.Long / Integer 交给脚本，未被脚本改动的字段不会经过 double，不会丢失精度
+ */
+class ScriptPacket(
+    private val uri: String,
+    private val cgiId: Int,
+    private val dataProvider: () -> WeProtoData,
+    private val topScope: Scriptable
+) : ScriptableObject(topScope, ScriptableObject.getObjectPrototype(topScope)) {
+
+    private var root: ProtoView? = null
+    private var baseModCount = 0
+
+    override fun getClassName() = "WePacket"
+
+    override fun has(name: String, start: Scriptable): Boolean =
+        name in NAMES || super.has(name, start)
+
+    override fun get(name: String, start: Scriptable): Any? = when (name) {
+        "uri" -> uri
+        "cgiId" -> cgiId
+        "jsonData" -> root()
+        else -> super.get(name, start)
+    }
+
+    override fun put(name: String, start: Scriptable, value: Any?) {
+        when (name) {
+            "uri", "cgiId" -> return
+            "jsonData" -> replaceJsonData(value)
+            else -> super.put(name, start, value)
+        }
+    }
+
+    override fun getIds(): Array<Any> = arrayOf<Any>(*NAMES) + super.getIds()
+
+    private fun root(): ProtoView {
+        root?.let { return it }
+        val data = dataProvider()
+        baseModCount = data.modCount
+        return ProtoView(data, null, topScope).also { root = it }
+    }
+
+    /**
+     * 整体替换 jsonData，兼容脚本直接 return 新对象的写法
+     * 新对象与当前数据逐字段比对后写入，之后读取 jsonData 得到的仍是 WeProtoData 的视图
+     */
+    fun replaceJsonData(value: Any?) {
+        val view = root()
+        if (value === view) return
+        val json = toJson(value) as? JSONObject ?: return
+        view.data.applyViewJSON(json, true, true)
+    }
+
+    /**
+     * 脚本是否改动了数据包，脚本没有读取过 jsonData 时不会触发解析
+     */
+    fun modified(): Boolean {
+        val view = root ?: return false
+        return view.data.modCount != baseModCount
+    }
+
+    /**
+     * 消息视图：以字段号为下标，单次出现的字段直接取值，重复字段为 [RepeatedView]，子消息为下一级视图
+     * 非数字的属性按普通 JS 属性保存，不写入数据包
+     */
+    private class ProtoView(
+        val data: WeProtoData,
+        private val parent: ProtoView?,
+        private val topScope: Scriptable
+    ) : ScriptableObject(topScope, getObjectPrototype(topScope)) {
+
+        // 字段号 << 32 | 出现序号 -> 子视图，重复字段本身以序号 -1 登记
+        private val children = HashMap<Long, Scriptable>()
+
+        override fun getClassName() = "Object"
+
+        override fun has(index: Int, start: Scriptable): Boolean =
+            index >= 0 && data.getFieldCount(index) > 0
+
+        override fun get(index: Int, start: Scriptable): Any? {
+            if (index < 0) return NOT_FOUND
+            return when (data.getFieldCount(index)) {
+                0 -> NOT_FOUND
+                1 -> element(index, 0)
+                else -> children.getOrPut(key(index, -1)) { RepeatedView(this, index, topScope) }
+            }
+        }
+
+        fun element(fieldNumber: Int, occurrence: Int): Any? {
+            val value = data.getFieldValue(fieldNumber, occurrence)
+            if (value !is WeProtoData) return value ?: Undefined.instance
+            val key = key(fieldNumber, occurrence)
+            val cached = children[key] as? ProtoView
+            if (cached != null && cached.data === value) return cached
+            return ProtoView(value, this, topScope).also { children[key] = it }
+        }
+
+        override fun put(index: Int, start: Scriptable, value: Any?) {
+            if (index < 0) return
+            changed(data.setFieldValue(index, toJson(value)))
+        }
+
+        fun putElement(fieldNumber: Int, occurrence: Int, value: Any?) {
+            changed(data.setFieldValue(fieldNumber, occurrence, toJson(value)))
+        }
+
+        override fun delete(index: Int) {
+            if (index >= 0) changed(data.setFieldValue(index, null))
+        }
+
+        override fun getIds(): Array<Any> {
+            val numbers = data.fieldNumbers
+            return Array<Any>(numbers.size) { numbers[it] } + super.getIds()
+        }
+
+        /**
+         * 本级已由 WeProtoData 标记修改，上层消息需要一并标记，否则序列化时会直接拷贝原始切片
+         */
+        private fun changed(changes: Int) {
+            if (changes <= 0) return
+            var p = parent
+            while (p != null) {
+                p.data.markModified()
+                p = p.parent
+            }
+        }
+
+        private fun key(fieldNumber: Int, occurrence: Int) = (fieldNumber.toLong() shl 32) or (occurrence.toLong() and 0xFFFFFFFFL)
+    }
+
+    /**
+     * 重复字段的类数组视图，原型为 Array.prototype，forEach / map 等通用数组方法可直接使用
+     * JSON.stringify 时通过 toJSON 输出为数组
+     */
+    private class RepeatedView(
+        private val owner: ProtoView,
+        private val fieldNumber: Int,
+        private val topScope: Scriptable
+    ) : ScriptableObject(topScope, getArrayPrototype(topScope)) {
+
+        init {
+            defineProperty("toJSON", object : BaseFunction(topScope, getFunctionPrototype(topScope)) {
+                override fun call(cx: RhinoContext, scope: Scriptable, thisObj: Scriptable?, args: Array<out Any?>): Any =
+                    cx.newArray(topScope, Array(length()) { get(it, this@RepeatedView) })
+            }, DONTENUM)
+        }
+
+        override fun getClassName() = "Object"
+
+        private fun length() = owner.data.getFieldCount(fieldNumber)
+
+        override fun has(index: Int, start: Scriptable) = index in 0 until length()
+
+        override fun get(index: Int, start: Scriptable): Any? =
+            if (index in 0 until length()) owner.element(fieldNumber, index) else NOT_FOUND
+
+        override fun put(index: Int, start: Scriptable, value: Any?) {
+            if (index >= 0) owner.putElement(fieldNumber, index, value)
+        }
+
+        override fun has(name: String, start: Scriptable) = name == "length" || super.has(name, start)
+
+        override fun get(name: String, start: Scriptable): Any? =
+            if (name == "length") length() else super.get(name, start)
+
+        override fun put(name: String, start: Scriptable, value: Any?) {
+            if (name != "length") super.put(name, start, value)
+        }
+
+        override fun getIds(): Array<Any> = Array(length()) { it }
+
+        fun toJsonArray(): JSONArray {
+            val arr = JSONArray()
+            for (i in 0 until length()) arr.put(toJson(owner.element(fieldNumber, i)) ?: JSONObject.NULL)
+            return arr
+        }
+    }
+
+    companion object {
+        private val NAMES = arrayOf("uri", "cgiId", "jsonData")
+
+        // 2^53，超出后 double 无法精确表示整数
+        private const val MAX_SAFE = 9007199254740992.0
+
+        /**
+         * 脚本写入的值转换为 WeProtoData 接受的 JSON 形式，视图对象按其当前内容转换
+         */
+        private fun toJson(value: Any?): Any? = when (value) {
+            null, is Undefined -> null
+            is ProtoView -> value.data.toJSON()
+            is RepeatedView -> value.toJsonArray()
+            is Wrapper -> toJson(value.unwrap())
+            is NativeArray -> {
+                val arr = JSONArray()
+                for (i in 0 until value.length.toInt()) arr.put(toJson(value.get(i, value)) ?: JSONObject.NULL)
+                arr
+            }
+            is Scriptable -> {
+                val obj = JSONObject()
+                for (id in value.ids) {
+                    val v = if (id is Int) value.get(id, value) else value.get(id.toString(), value)
+                    toJson(v)?.let { obj.put(id.toString(), it) }
+                }
+                obj
+            }
+            is CharSequence -> value.toString()
+            is Double -> if (value == floor(value) && abs(value) < MAX_SAFE) value.toLong() else value
+            is Float -> toJson(value.toDouble())
+            else -> value
+        }
+    }
+}
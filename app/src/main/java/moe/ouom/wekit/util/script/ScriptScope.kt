@@ -0,0 +1,72 @@
+package moe.ouom.wekit.util.script
+
+import org.mozilla.javascript.BaseFunction
+import org.mozilla.javascript.NativeJavaClass
+import org.mozilla.javascript.NativeJavaPackage
+import org.mozilla.javascript.ScriptRuntime
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import org.mozilla.javascript.Undefined
+import org.mozilla.javascript.Context as RhinoContext
+
+/**
+ * 脚本实例的顶层作用域，以共享的封存作用域（ImporterTopLevel）为原型
+ * 共享作用域自带的 importPackage / importClass 会写入共享作用域本身，这里在实例上另行定义，
+ * 导入结果只对当前实例可见，不同脚本、不同实例之间互不影响
+ * <p>
+ * 与脚本实例一样，同一时刻只由一个线程使用
+ */
+class ScriptScope(shared: Scriptable) : ScriptableObject() {
+
+    private val packages = ArrayList<NativeJavaPackage>()
+
+    init {
+        prototype = shared
+        defineProperty("importPackage", ImportFunction(shared, true), DONTENUM)
+        defineProperty("importClass", ImportFunction(shared, false), DONTENUM)
+    }
+
+    override fun getClassName() = "global"
+
+    override fun get(name: String, start: Scriptable): Any? {
+        val value = super.get(name, start)
+        // 与 ImporterTopLevel 一致，已导入的包只用来补充查不到的名字，不遮盖标准对象
+        if (value !== NOT_FOUND || packages.isEmpty() || prototype.has(name, start)) return value
+        return packageClass(name) ?: NOT_FOUND
+    }
+
+    override fun has(name: String, start: Scriptable): Boolean =
+        super.has(name, start) || (packages.isNotEmpty() && packageClass(name) != null)
+
+    private fun packageClass(name: String): NativeJavaClass? {
+        for (pkg in packages) {
+            (pkg.get(name, pkg) as? NativeJavaClass)?.let { return it }
+        }
+        return null
+    }
+
+    private inner class ImportFunction(shared: Scriptable, private val isPackage: Boolean) : BaseFunction() {
+        init {
+            parentScope = this@ScriptScope
+            prototype = getFunctionPrototype(shared)
+        }
+
+        override fun getFunctionName() = if (isPackage) "importPackage" else "importClass"
+
+        override fun call(cx: RhinoContext, scope: Scriptable, thisObj: Scriptable?, args: Array<out Any?>): Any {
+            for (arg in args) {
+                if (isPackage) {
+                    val pkg = arg as? NativeJavaPackage
+                        ?: throw ScriptRuntime.typeError1("msg.not.pkg", RhinoContext.toString(arg))
+                    if (pkg !in packages) packages.add(pkg)
+                } else {
+                    val cls = arg as? NativeJavaClass
+                        ?: throw ScriptRuntime.typeError1("msg.not.class", RhinoContext.toString(arg))
+                    val name = cls.classObject.name.substringAfterLast('.')
+                    this@ScriptScope.put(name, this@ScriptScope, cls)
+                }
+            }
+            return Undefined.instance
+        }
+    }
+}
@@ -0,0 +1,64 @@
+plugins {
+    kotlin("jvm")
+    alias(libs.plugins.jmh)
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(17))
+    }
+}
+
+// 只编译 app 中不依赖 Android 的协议相关源码，基准测试在纯 JVM 上运行
+val appSrc = rootProject.file("app/src/main/java")
+
+sourceSets {
+    // app 中的 WeLogger 依赖 Android，这里用 shim 中的纯 JVM 实现替代
+    val shim by creating
+    main {
+        compileClasspath += shim.output
+        runtimeClasspath += shim.output
+        java {
+            setSrcDirs(listOf(appSrc))
+            include(
+                "moe/ouom/wekit/util/WeProtoData.java",
+                "moe/ouom/wekit/util/WeProtoSchema.java",
+                "moe/ouom/wekit/util/WeProtoJsonCodec.java",
+                "moe/ouom/wekit/util/common/PacketRing.java",
+            )
+        }
+        kotlin {
+            setSrcDirs(listOf(appSrc))
+            include(
+                "moe/ouom/wekit/util/ProtoJsonBuilder.kt",
+                "moe/ouom/wekit/hooks/sdk/protocol/intf/IWePkgInterceptor.kt",
+                "moe/ouom/wekit/hooks/sdk/protocol/model/WePkgPacket.kt",
+            )
+        }
+    }
+}
+
+dependencies {
+    implementation(libs.google.protobuf.java)
+    implementation(libs.hutool.core)
+    // Android 自带 org.json，JVM 上需要单独引入
+    implementation(libs.org.json)
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    benchmarkMode.set(listOf("thrpt", "sample"))
+    timeUnit.set("us")
+    profilers.set(listOf("gc"))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+
+    // -D 只作用于 Gradle 自身的 JVM，语料目录需显式传给 JMH fork 出的 JVM；
+    // 外部语料的条目名取决于文件，packet 参数改为 all，每次操作遍历整个语料
+    providers.systemProperty("wekit.bench.corpus").orNull?.let { corpus ->
+        jvmArgsAppend.add("-Dwekit.bench.corpus=$corpus")
+        benchmarkParameters.put("packet", objects.listProperty<String>().value(listOf("all")))
+    }
+}
@@ -0,0 +1,170 @@
+package moe.ouom.wekit.bench;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import moe.ouom.wekit.util.common.PacketRing;
+
+/**
+ * 基准测试使用的数据包语料
+ * <p>
+ * 通过 -Dwekit.bench.corpus=目录 指定抓取并脱敏后的数据包，目录下每个 .bin 文件为一个完整数据包（可带 4 字节包头），
+ * 每个 .wkpc 文件为「协议抓包」导出的抓包文件，其中每条记录作为一个数据包。
+ * 未指定时使用按常见 CGI 结构构造的合成数据包，保证基准可以直接运行
+ * <p>
+ * 外部语料的条目名取决于文件，基准的 packet 参数此时为 {@link #ALL}，每次操作遍历整个语料
+ */
+final class PacketCorpus {
+
+    static final String ALL = "all";
+
+    private PacketCorpus() {
+    }
+
+    /**
+     * 按基准的 packet 参数取出数据包，{@link #ALL} 表示语料中的全部数据包
+     */
+    static byte[][] select(String packet) throws IOException {
+        Map<String, byte[]> corpus = load();
+        if (ALL.equals(packet)) return corpus.values().toArray(new byte[0][]);
+        byte[] bytes = corpus.get(packet);
+        if (bytes == null) {
+            throw new IllegalArgumentException("unknown packet: " + packet + ", available: " + corpus.keySet());
+        }
+        return new byte[][]{bytes};
+    }
+
+    static Map<String, byte[]> load() throws IOException {
+        String dir = System.getProperty("wekit.bench.corpus");
+        if (dir != null && !dir.isEmpty()) {
+            File[] files = new File(dir).listFiles((d, name) -> name.endsWith(".bin") || name.endsWith(".wkpc"));
+            if (files != null && files.length > 0) {
+                Arrays.sort(files);
+                Map<String, byte[]> out = new LinkedHashMap<>();
+                for (File f : files) {
+                    if (f.getName().endsWith(".wkpc")) {
+                        try (InputStream in = new FileInputStream(f)) {
+                            int i = 0;
+                            for (PacketRing.Record r : PacketRing.read(in)) {
+                                String dirName = r.isRequest ? "req" : "resp";
+                                out.put(f.getName() + "#" + (i++) + "-" + r.cgiId + "-" + dirName, r.payload);
+                            }
+                        }
+                    } else {
+                        out.put(f.getName(), Files.readAllBytes(f.toPath()));
+                    }
+                }
+                return out;
+            }
+        }
+        return synthetic();
+    }
+
+    static Map<String, byte[]> synthetic() throws IOException {
+        Map<String, byte[]> out = new LinkedHashMap<>();
+        out.put("newsendmsg", withPrefix(sendMsg()));
+        out.put("newreportkvcomm", withPrefix(reportKv(64)));
+        out.put("findersync", withPrefix(finderSync(200)));
+        return out;
+    }
+
+    /**
+     * 类似 522 请求：基础请求头 + 一条文本消息
+     */
+    private static byte[] sendMsg() throws IOException {
+        byte[] toUser = message(o -> o.writeString(1, "wxid_bench_0000000001"));
+        byte[] msg = message(o -> {
+            o.writeByteArray(1, toUser);
+            o.writeString(2, "这是一条用于基准测试的消息 benchmark message");
+            o.writeInt32(3, 1);
+            o.writeInt64(4, 1760000000L);
+            o.writeInt64(5, 123456789012345L);
+            o.writeString(6, "<msgsource><sequence_id>8888</sequence_id></msgsource>");
+        });
+        return message(o -> {
+            o.writeByteArray(1, baseRequest());
+            o.writeInt32(2, 1);
+            o.writeByteArray(3, msg);
+        });
+    }
+
+    /**
+     * 类似 newreportkvcomm：大量短小的重复子消息
+     */
+    private static byte[] reportKv(int count) throws IOException {
+        return message(o -> {
+            o.writeByteArray(1, baseRequest());
+            for (int i = 0; i < count; i++) {
+                final int id = i;
+                o.writeByteArray(2, message(kv -> {
+                    kv.writeInt32(1, 10000 + id);
+                    kv.writeString(2, "key_" + id + ",value_" + (id * 31) + ",ts=1760000000");
+                    kv.writeFixed32(3, id);
+                }));
+            }
+        });
+    }
+
+    /**
+     * 类似 findersync：较大的回包，含二进制字段与多层嵌套
+     */
+    private static byte[] finderSync(int count) throws IOException {
+        byte[] blob = new byte[48];
+        for (int i = 0; i < blob.length; i++) blob[i] = (byte) (i * 37 + 0x80);
+        return message(o -> {
+            o.writeByteArray(1, message(r -> {
+                r.writeInt32(1, 0);
+                r.writeString(2, "ok");
+            }));
+            for (int i = 0; i < count; i++) {
+                final int id = i;
+                o.writeByteArray(2, message(item -> {
+                    item.writeInt64(1, 1000000000000L + id);
+                    item.writeString(2, "finder_bench_" + id);
+                    item.writeByteArray(3, blob);
+                    item.writeByteArray(4, message(media -> {
+                        media.writeString(1, "https://example.invalid/media/" + id);
+                        media.writeFixed64(2, id * 1024L);
+                    }));
+                }));
+            }
+            o.writeByteArray(3, blob);
+        });
+    }
+
+    private static byte[] baseRequest() throws IOException {
+        return message(o -> {
+            o.writeByteArray(1, new byte[16]);
+            o.writeInt32(2, 0x12345678);
+            o.writeByteArray(3, "Android-bench".getBytes());
+            o.writeInt32(4, 0x28003A36);
+        });
+    }
+
+    private static byte[] withPrefix(byte[] body) {
+        byte[] out = new byte[body.length + 4];
+        System.arraycopy(body, 0, out, 4, body.length);
+        return out;
+    }
+
+    interface Writer {
+        void write(CodedOutputStream o) throws IOException;
+    }
+
+    private static byte[] message(Writer w) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        CodedOutputStream o = CodedOutputStream.newInstance(bos);
+        w.write(o);
+        o.flush();
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,51 @@
+package moe.ouom.wekit.bench;
+
+import moe.ouom.wekit.util.ProtoJsonBuilder;
+import moe.ouom.wekit.util.WeProtoJsonCodec;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * sendCgi 的编码路径：JSONObject 编码与直接从 JSON 文本编码
+ * 使用外部语料时 packet 为 all，每次操作编码整个语料
+ */
+@State(Scope.Thread)
+public class ProtoJsonBuilderBenchmark {
+
+    @Param({"newsendmsg", "newreportkvcomm", "findersync"})
+    public String packet;
+
+    private String[] jsonTexts;
+    private JSONObject[] jsons;
+
+    @Setup
+    public void setup() throws Exception {
+        byte[][] packets = PacketCorpus.select(packet);
+        jsonTexts = new String[packets.length];
+        jsons = new JSONObject[packets.length];
+        for (int i = 0; i < packets.length; i++) {
+            jsonTexts[i] = WeProtoJsonCodec.toJson(packets[i]);
+            jsons[i] = new JSONObject(jsonTexts[i]);
+        }
+    }
+
+    @Benchmark
+    public void makeBytesFromObject(Blackhole bh) {
+        for (JSONObject json : jsons) {
+            bh.consume(ProtoJsonBuilder.INSTANCE.makeBytes(json));
+        }
+    }
+
+    @Benchmark
+    public void makeBytesFromText(Blackhole bh) {
+        for (String jsonText : jsonTexts) {
+            bh.consume(ProtoJsonBuilder.INSTANCE.makeBytes(jsonText));
+        }
+    }
+}
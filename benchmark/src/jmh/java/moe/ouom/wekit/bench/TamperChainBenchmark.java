@@ -0,0 +1,102 @@
+package moe.ouom.wekit.bench;
+
+import moe.ouom.wekit.hooks.sdk.protocol.intf.IWePkgInterceptor;
+import moe.ouom.wekit.hooks.sdk.protocol.model.WePkgPacket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 回包拦截链：readers 个只读取解析结果的拦截器 + 末尾一个改写字段的拦截器
+ * 使用外部语料时 packet 为 all，每次操作让整个语料依次通过拦截链
+ * <p>
+ * WePkgManager 依赖 WeConfig（MMKV）无法在纯 JVM 上加载，这里按其 handleResponseTamper 的语义
+ * （所有匹配的拦截器依次处理同一个 WePkgPacket，结束时取 result）驱动同一组 IWePkgInterceptor
+ */
+@State(Scope.Thread)
+public class TamperChainBenchmark {
+
+    private static final String URI = "/cgi-bin/bench";
+
+    @Param({"newsendmsg", "findersync"})
+    public String packet;
+
+    @Param({"1", "4"})
+    public int readers;
+
+    private byte[][] packets;
+    private final List<IWePkgInterceptor> chain = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        packets = PacketCorpus.select(packet);
+
+        chain.clear();
+        for (int i = 0; i < readers; i++) {
+            chain.add(new Interceptor() {
+                @Override
+                public void onResponse(WePkgPacket p) {
+                    try {
+                        p.data().toJSON();
+                    } catch (Exception ignored) {
+                    }
+                }
+            });
+        }
+        chain.add(new Interceptor() {
+            @Override
+            public void onResponse(WePkgPacket p) {
+                p.data().replaceUtf8Contains("bench", "BENCH");
+            }
+        });
+    }
+
+    /**
+     * 显式实现接口的全部方法，不依赖 Kotlin 接口默认方法的编译方式
+     */
+    private abstract static class Interceptor implements IWePkgInterceptor {
+        @Override
+        public boolean wantsRequest(String uri, int cgiId) {
+            return true;
+        }
+
+        @Override
+        public boolean wantsResponse(String uri, int cgiId) {
+            return true;
+        }
+
+        @Override
+        public void onRequest(WePkgPacket packet) {
+        }
+
+        @Override
+        public byte[] onRequest(String uri, int cgiId, byte[] reqBytes) {
+            return null;
+        }
+
+        @Override
+        public byte[] onResponse(String uri, int cgiId, byte[] respBytes) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public void handleResponseTamper(Blackhole bh) {
+        for (byte[] bytes : packets) {
+            WePkgPacket p = null;
+            for (IWePkgInterceptor interceptor : chain) {
+                if (!interceptor.wantsResponse(URI, 0)) continue;
+                if (p == null) p = new WePkgPacket(URI, 0, bytes, null);
+                interceptor.onResponse(p);
+            }
+            bh.consume(p != null ? p.result() : null);
+        }
+    }
+}
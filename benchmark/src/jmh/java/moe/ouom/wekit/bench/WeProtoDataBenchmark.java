@@ -0,0 +1,103 @@
+package moe.ouom.wekit.bench;
+
+import moe.ouom.wekit.util.WeProtoData;
+import moe.ouom.wekit.util.WeProtoJsonCodec;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * WeProtoData 各阶段耗时：解析、转 JSON、回写 JSON 视图、序列化
+ * packet 取值对应 {@link PacketCorpus} 中的条目名，使用外部语料时为 all，每次操作处理整个语料
+ */
+@State(Scope.Thread)
+public class WeProtoDataBenchmark {
+
+    @Param({"newsendmsg", "newreportkvcomm", "findersync"})
+    public String packet;
+
+    private byte[][] packets;
+    private JSONObject[] views;
+    private WeProtoData[] parsed;
+
+    @Setup
+    public void setup() throws Exception {
+        packets = PacketCorpus.select(packet);
+        views = new JSONObject[packets.length];
+        parsed = new WeProtoData[packets.length];
+        for (int i = 0; i < packets.length; i++) {
+            parsed[i] = new WeProtoData();
+            parsed[i].fromBytes(packets[i]);
+            views[i] = parsed[i].toJSON();
+        }
+    }
+
+    @Benchmark
+    public void fromBytes(Blackhole bh) throws Exception {
+        for (byte[] bytes : packets) {
+            WeProtoData d = new WeProtoData();
+            d.fromBytes(bytes);
+            bh.consume(d);
+        }
+    }
+
+    @Benchmark
+    public void fromBytesLazy(Blackhole bh) throws Exception {
+        for (byte[] bytes : packets) {
+            WeProtoData d = new WeProtoData();
+            d.fromBytesLazy(bytes);
+            bh.consume(d);
+        }
+    }
+
+    @Benchmark
+    public void toJSON(Blackhole bh) throws Exception {
+        for (byte[] bytes : packets) {
+            WeProtoData d = new WeProtoData();
+            d.fromBytesLazy(bytes);
+            bh.consume(d.toJSON());
+        }
+    }
+
+    @Benchmark
+    public void codecToJson(Blackhole bh) throws Exception {
+        for (byte[] bytes : packets) {
+            bh.consume(WeProtoJsonCodec.toJson(bytes));
+        }
+    }
+
+    @Benchmark
+    public void applyViewJSON(Blackhole bh) throws Exception {
+        for (int i = 0; i < packets.length; i++) {
+            WeProtoData d = new WeProtoData();
+            d.fromBytesLazy(packets[i]);
+            d.applyViewJSON(views[i], true);
+            bh.consume(d.toPacketBytes());
+        }
+    }
+
+    @Benchmark
+    public void toPacketBytesClean(Blackhole bh) {
+        for (WeProtoData d : parsed) {
+            bh.consume(d.toPacketBytes());
+        }
+    }
+
+    /**
+     * 改写部分文本字段后序列化，只有被修改的分支需要重新编码
+     */
+    @Benchmark
+    public void toPacketBytesAfterReplace(Blackhole bh) throws Exception {
+        for (byte[] bytes : packets) {
+            WeProtoData d = new WeProtoData();
+            d.fromBytesLazy(bytes);
+            d.replaceUtf8Contains("bench", "BENCH");
+            bh.consume(d.toPacketBytes());
+        }
+    }
+}
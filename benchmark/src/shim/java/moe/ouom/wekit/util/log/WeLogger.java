@@ -0,0 +1,17 @@
+package moe.ouom.wekit.util.log;
+
+/**
+ * 基准测试用的 WeLogger 替身，只提供协议相关源码用到的方法，输出到 stderr
+ */
+public class WeLogger {
+
+    private WeLogger() {}
+
+    public static void w(String msg) {
+        System.err.println("[W] " + msg);
+    }
+
+    public static void e(String msg, Throwable e) {
+        System.err.println("[E] " + msg + ": " + e);
+    }
+}
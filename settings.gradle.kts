@@ -68,4 +68,5 @@ include(
     ":libs:common:libxposed:service",
 //    ":libs:common:ezxhelper",
     ":libs:common:annotation-scanner",
+    ":benchmark",
 )